@@ -0,0 +1,9 @@
+package manager;
+
+// Поведение при заполненной очереди асинхронной записи.
+public enum Backpressure {
+    // Вызывающий поток ждёт, пока поток записи не освободит место.
+    BLOCK,
+    // Изменение отклоняется с ManagerSaveException до того, как применено в памяти.
+    REJECT
+}
@@ -0,0 +1,269 @@
+package manager;
+
+import model.*;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Двоичный формат снимка.
+// Файл: MAGIC, версия (1 байт), затем записи до конца файла.
+// Запись: id (int), тип (byte), статус (byte), id эпика (int, -1 если нет), начало в секундах эпохи UTC
+// (long, NO_TIME если нет), длительность в минутах (long), затем имя и описание как длина (int) + UTF-8.
+final class BinarySnapshot {
+    static final byte[] MAGIC = {'K', 'N', 'B', 'N'};
+    private static final byte VERSION = 1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+    private static final int NO_PARENT = -1;
+    private static final long MAP_WINDOW = Integer.MAX_VALUE;
+
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final Status[] STATUSES = Status.values();
+
+    private BinarySnapshot() {
+    }
+
+    static boolean isBinary(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] header = input.readNBytes(MAGIC.length);
+            return Arrays.equals(header, MAGIC);
+        }
+    }
+
+    static void write(File target, Collection<? extends Task> tasks, Collection<? extends Task> epics,
+                      Collection<? extends Task> subtasks) throws IOException {
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(target), 64 * 1024)) {
+            write(output, tasks, epics, subtasks);
+        }
+    }
+
+    // Запись в поток без его закрытия: через него может писаться сжатый снимок.
+    // Тип каждой записи определяется по классу задачи, так что группы могут быть любыми.
+    static void write(OutputStream target, Collection<? extends Task> tasks, Collection<? extends Task> epics,
+                      Collection<? extends Task> subtasks) throws IOException {
+        DataOutputStream output = new DataOutputStream(target);
+        output.write(MAGIC);
+        output.writeByte(VERSION);
+
+        for (Collection<? extends Task> group : List.of(tasks, epics, subtasks)) {
+            for (Task task : group) {
+                writeRecord(output, task);
+            }
+        }
+        output.flush();
+    }
+
+    // Запись с индексом описаний для их последующего чтения по требованию. Описание, которое ещё лежит
+    // в прежнем снимке, копируется байтами без декодирования.
+    static DescriptionIndex writeIndexed(File target, List<Task> tasks, List<Epic> epics, List<Subtask> subtasks)
+            throws IOException {
+        int count = tasks.size() + epics.size() + subtasks.size();
+        DescriptionIndex index = new DescriptionIndex(new String[count], new long[count], new int[count]);
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(target), 64 * 1024))) {
+            output.write(MAGIC);
+            output.writeByte(VERSION);
+
+            int i = 0;
+            for (List<? extends Task> group : List.of(tasks, epics, subtasks)) {
+                for (Task task : group) {
+                    int parentId = task instanceof Subtask subtask ? subtask.getParentId() : NO_PARENT;
+                    writeFields(output, task, TaskCsvCodec.typeOf(task), parentId);
+                    if (task.getDescriptionStore() instanceof SnapshotDescriptions source) {
+                        int length = task.getDescriptionLength();
+                        output.writeInt(length);
+                        index.offsets()[i] = output.size();
+                        index.lengths()[i] = length;
+                        source.copyTo(output, task.getDescriptionOffset(), length);
+                    } else {
+                        String description = task.getDescription();
+                        byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+                        output.writeInt(bytes.length);
+                        index.texts()[i] = description;
+                        index.offsets()[i] = output.size();
+                        index.lengths()[i] = bytes.length;
+                        output.write(bytes);
+                    }
+                    i++;
+                }
+            }
+        }
+        return index;
+    }
+
+    static void read(File source, Consumer<TaskRecord> sink) throws IOException {
+        read(source, sink, false);
+    }
+
+    static void read(File source, Consumer<TaskRecord> sink, boolean lazyDescriptions) throws IOException {
+        read(source, sink, lazyDescriptions, MAP_WINDOW);
+    }
+
+    // Чтение через отображение файла в память: числовые поля читаются напрямую из буфера,
+    // для строк используется один переиспользуемый массив байт. При lazyDescriptions текст описания
+    // не читается: в записи остаются его смещение и длина. FileChannel.map ограничен 2 ГБ, поэтому файл
+    // отображается окнами не больше window байт; запись, не поместившаяся в окно, читается заново
+    // из следующего окна, которое начинается с неё.
+    static void read(File source, Consumer<TaskRecord> sink, boolean lazyDescriptions, long window)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long base = 0;
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(size, window));
+            buffer.position(MAGIC.length);
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия двоичного снимка: " + version);
+            }
+
+            byte[] scratch = new byte[256];
+            while (base + buffer.position() < size) {
+                int start = buffer.position();
+                TaskRecord record;
+                try {
+                    record = readRecord(buffer, scratch, lazyDescriptions, base);
+                } catch (BufferUnderflowException e) {
+                    if (base + buffer.limit() == size) {
+                        throw new IOException("Запись по смещению " + (base + start) + " обрывается в конце файла");
+                    }
+                    if (start == 0) {
+                        throw new IOException("Запись по смещению " + base + " длиннее окна отображения");
+                    }
+                    base += start;
+                    buffer = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(size - base, window));
+                    continue;
+                }
+                sink.accept(record);
+            }
+        }
+    }
+
+    // Последовательное чтение из потока, для снимков, которые нельзя отобразить в память.
+    // Заголовок MAGIC уже прочитан вызывающим.
+    static void read(InputStream source, Consumer<TaskRecord> sink) throws IOException {
+        DataInputStream input = new DataInputStream(source);
+        byte version = input.readByte();
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия двоичного снимка: " + version);
+        }
+
+        byte[] scratch = new byte[256];
+        int first;
+        while ((first = input.read()) >= 0) {
+            int id = first << 24 | input.readUnsignedByte() << 16 | input.readUnsignedByte() << 8
+                    | input.readUnsignedByte();
+            TaskType type = TYPES[input.readByte()];
+            Status status = STATUSES[input.readByte()];
+            int parentId = input.readInt();
+            long startSeconds = input.readLong();
+            long durationMinutes = input.readLong();
+            String name = readString(input, scratch);
+            String description = readString(input, scratch);
+            sink.accept(toRecord(id, type, name, description, status, parentId, startSeconds, durationMinutes));
+        }
+    }
+
+    // Чтение одной записи с текущей позиции буфера. Строки длиннее scratch читаются через отдельный массив.
+    static TaskRecord readRecord(ByteBuffer buffer, byte[] scratch) {
+        return readRecord(buffer, scratch, false, 0);
+    }
+
+    // base - смещение буфера в файле, из него и позиции в буфере складывается смещение отложенного описания.
+    private static TaskRecord readRecord(ByteBuffer buffer, byte[] scratch, boolean lazyDescription, long base) {
+        int id = buffer.getInt();
+        TaskType type = TYPES[buffer.get()];
+        Status status = STATUSES[buffer.get()];
+        int parentId = buffer.getInt();
+        long startSeconds = buffer.getLong();
+        long durationMinutes = buffer.getLong();
+        String name = readString(buffer, scratch);
+        if (!lazyDescription) {
+            String description = readString(buffer, scratch);
+            return toRecord(id, type, name, description, status, parentId, startSeconds, durationMinutes);
+        }
+
+        int length = buffer.getInt();
+        int offset = buffer.position();
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        buffer.position(offset + length);
+        LocalDateTime startTime = startSeconds != NO_TIME
+                ? LocalDateTime.ofEpochSecond(startSeconds, 0, ZoneOffset.UTC)
+                : null;
+        return new TaskRecord(id, type, name, null, status, parentId, startTime,
+                Duration.ofMinutes(durationMinutes), base + offset, length);
+    }
+
+    private static TaskRecord toRecord(int id, TaskType type, String name, String description, Status status,
+                                       int parentId, long startSeconds, long durationMinutes) {
+        LocalDateTime startTime = startSeconds != NO_TIME
+                ? LocalDateTime.ofEpochSecond(startSeconds, 0, ZoneOffset.UTC)
+                : null;
+        return new TaskRecord(id, type, name, description, status, parentId, startTime,
+                Duration.ofMinutes(durationMinutes));
+    }
+
+    static void writeRecord(DataOutput output, Task task) throws IOException {
+        int parentId = task instanceof Subtask subtask ? subtask.getParentId() : NO_PARENT;
+        writeRecord(output, task, TaskCsvCodec.typeOf(task), parentId);
+    }
+
+    private static void writeRecord(DataOutput output, Task task, TaskType type, int parentId)
+            throws IOException {
+        writeFields(output, task, type, parentId);
+        writeString(output, task.getDescription());
+    }
+
+    // Все поля записи, кроме описания.
+    private static void writeFields(DataOutput output, Task task, TaskType type, int parentId) throws IOException {
+        output.writeInt(task.getId());
+        output.writeByte(type.ordinal());
+        output.writeByte(task.getStatus().ordinal());
+        output.writeInt(parentId);
+        output.writeLong(task.getStartTime() != null
+                ? task.getStartTime().toEpochSecond(ZoneOffset.UTC)
+                : NO_TIME);
+        output.writeLong(task.getDurationTime().toMinutes());
+        writeString(output, task.getName());
+    }
+
+    private static void writeString(DataOutput output, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer, byte[] scratch) {
+        int length = buffer.getInt();
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        buffer.get(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(DataInput input, byte[] scratch) throws IOException {
+        int length = input.readInt();
+        byte[] bytes = length <= scratch.length ? scratch : new byte[length];
+        input.readFully(bytes, 0, length);
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // Расположение описаний в записанном снимке в порядке tasks, epics, subtasks. texts[i] - записанный текст
+    // или null, если описание скопировано из прежнего снимка.
+    record DescriptionIndex(String[] texts, long[] offsets, int[] lengths) {
+    }
+}
@@ -0,0 +1,110 @@
+package manager;
+
+import model.Task;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Снимок, сжатый потоком GZIP. Внутри лежит обычный CSV или двоичный снимок, формат которого после
+// распаковки определяется по его собственному заголовку. Снимок сжимается и распаковывается потоково,
+// без промежуточной копии в памяти.
+final class CompressedSnapshot {
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private CompressedSnapshot() {
+    }
+
+    static boolean isCompressed(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] header = input.readNBytes(GZIP_MAGIC.length);
+            return Arrays.equals(header, GZIP_MAGIC);
+        }
+    }
+
+    static CompressionStats write(File target, SnapshotFormat format, Collection<? extends Task> tasks,
+                                  Collection<? extends Task> epics, Collection<? extends Task> subtasks)
+            throws IOException {
+        long started = System.nanoTime();
+        long rawBytes;
+        try (CountingOutputStream output = new CountingOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(target), BUFFER_SIZE), BUFFER_SIZE))) {
+            switch (format) {
+                case CSV -> CsvSnapshot.write(output, tasks, epics, subtasks);
+                case BINARY -> BinarySnapshot.write(output, tasks, epics, subtasks);
+                case PAGED -> throw new IllegalArgumentException("Страничный снимок не может быть сжат");
+            }
+            rawBytes = output.count;
+        }
+        return new CompressionStats(rawBytes, target.length(), System.nanoTime() - started);
+    }
+
+    static CompressionStats read(File source, Consumer<TaskRecord> sink) throws IOException {
+        long started = System.nanoTime();
+        long rawBytes;
+        try (CountingInputStream counting = new CountingInputStream(
+                new GZIPInputStream(new FileInputStream(source), BUFFER_SIZE))) {
+            BufferedInputStream input = new BufferedInputStream(counting, BUFFER_SIZE);
+            input.mark(BinarySnapshot.MAGIC.length);
+            if (Arrays.equals(input.readNBytes(BinarySnapshot.MAGIC.length), BinarySnapshot.MAGIC)) {
+                BinarySnapshot.read(input, sink);
+            } else {
+                input.reset();
+                CsvSnapshot.read(new InputStreamReader(input, StandardCharsets.UTF_8), sink);
+            }
+            rawBytes = counting.count;
+        }
+        return new CompressionStats(rawBytes, source.length(), System.nanoTime() - started);
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+    }
+}
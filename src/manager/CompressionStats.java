@@ -0,0 +1,20 @@
+package manager;
+
+// Результат сжатия или распаковки снимка: объём данных до сжатия, размер файла и затраченное время.
+public record CompressionStats(long rawBytes, long compressedBytes, long elapsedNanos) {
+
+    // Во сколько раз файл меньше несжатого снимка.
+    public double ratio() {
+        return compressedBytes == 0 ? 1.0 : (double) rawBytes / compressedBytes;
+    }
+
+    public long elapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+
+    // Суммарный результат по нескольким файлам, например по шардам одного сохранения.
+    CompressionStats plus(CompressionStats other) {
+        return new CompressionStats(rawBytes + other.rawBytes, compressedBytes + other.compressedBytes,
+                elapsedNanos + other.elapsedNanos);
+    }
+}
@@ -0,0 +1,116 @@
+package manager;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+// Чтение CSV-записей с учётом RFC 4180: перевод строки внутри кавычек является частью поля,
+// а не концом записи. Кавычки открывают поле только в его начале: старые файлы хранили имена
+// без экранирования, и кавычка внутри такого поля - обычный символ. Символы читаются блоками
+// в собственный буфер, запись собирается в переиспользуемый StringBuilder.
+final class CsvRecordReader implements Closeable {
+    private final Reader reader;
+    private final char[] buffer = new char[64 * 1024];
+    private final StringBuilder record = new StringBuilder(256);
+    private int position = 0;
+    private int limit = 0;
+    // Текст, возвращённый в поток после отката записи со старым полем, начатым кавычкой; читается раньше буфера.
+    private String pending;
+    private int pendingPosition;
+
+    CsvRecordReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Следующая запись без завершающего перевода строки или null в конце файла.
+    // Поле в кавычках, которое продолжается за перевод строки, но не закрывается по RFC 4180 (файл кончается
+    // или за закрывающей кавычкой нет запятой и конца строки), считается старым полем без экранирования:
+    // запись обрезается по первому такому переводу строки, а остаток читается как следующие записи.
+    String next() throws IOException {
+        record.setLength(0);
+        boolean quoted = false;
+        boolean closed = false;
+        boolean fieldStart = true;
+        boolean read = false;
+        int firstBreak = -1;
+
+        while (true) {
+            char c;
+            if (pending != null) {
+                c = pending.charAt(pendingPosition++);
+                if (pendingPosition == pending.length()) {
+                    pending = null;
+                }
+            } else {
+                if (position == limit) {
+                    limit = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+                    if (limit <= 0) {
+                        limit = 0;
+                        if (quoted && firstBreak >= 0) {
+                            return literalLine(firstBreak, "");
+                        }
+                        return read ? trimCarriageReturn() : null;
+                    }
+                }
+                c = buffer[position++];
+            }
+
+            read = true;
+            if (c == '"') {
+                if (quoted) {
+                    // Закрывающая кавычка или первая из пары экранированных.
+                    quoted = false;
+                    closed = true;
+                } else if (closed) {
+                    // Вторая кавычка пары "": поле в кавычках продолжается.
+                    quoted = true;
+                    closed = false;
+                } else if (fieldStart) {
+                    quoted = true;
+                }
+            } else {
+                if (closed && firstBreak >= 0 && c != ',' && c != '\n' && c != '\r') {
+                    return literalLine(firstBreak, String.valueOf(c));
+                }
+                closed = false;
+                if (c == '\n') {
+                    if (!quoted) {
+                        return trimCarriageReturn();
+                    }
+                    if (firstBreak < 0) {
+                        firstBreak = record.length();
+                    }
+                }
+            }
+            fieldStart = c == ',' && !quoted;
+            record.append(c);
+        }
+    }
+
+    // Запись до перевода строки lineEnd; всё после него вместе с уже прочитанным символом tail
+    // возвращается в поток.
+    private String literalLine(int lineEnd, String tail) {
+        String rest = record.substring(lineEnd + 1) + tail;
+        if (pending != null) {
+            rest += pending.substring(pendingPosition);
+        }
+        pending = rest.isEmpty() ? null : rest;
+        pendingPosition = 0;
+        record.setLength(lineEnd);
+        return trimCarriageReturn();
+    }
+
+    private String trimCarriageReturn() {
+        int length = record.length();
+        if (length > 0 && record.charAt(length - 1) == '\r') {
+            record.setLength(length - 1);
+        }
+        return record.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,125 @@
+package manager;
+
+import model.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+// Текстовый CSV-формат снимка.
+final class CsvSnapshot {
+    static final String HEADER = "id,type,name,status,description,epic,startTime,duration,endTime";
+    private static final int CHUNK_RECORDS = 4096;
+
+    private CsvSnapshot() {
+    }
+
+    // Потоковое чтение: файл читается блоками по CHUNK_RECORDS записей, и пока разбирается один блок,
+    // читается следующий. Записи блока разбираются параллельно. Task и Epic передаются в sink по мере
+    // разбора, Subtask - после всех Epic, так что порядок строк в файле не важен.
+    static void read(File source, Consumer<TaskRecord> sink) throws IOException {
+        read(Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8), sink);
+    }
+
+    // Чтение из уже открытого потока, например распакованного снимка. Поток закрывается.
+    static void read(Reader source, Consumer<TaskRecord> sink) throws IOException {
+        List<TaskRecord> subtasks = new ArrayList<>();
+
+        try (CsvRecordReader reader = new CsvRecordReader(source)) {
+            reader.next();
+            List<String> chunk = readChunk(reader);
+            CompletableFuture<List<TaskRecord>> parsing = parseAsync(chunk);
+
+            while (!chunk.isEmpty()) {
+                List<String> next = readChunk(reader);
+                List<TaskRecord> records = join(parsing);
+                parsing = parseAsync(next);
+
+                for (TaskRecord record : records) {
+                    if (record.type() == TaskType.SUBTASK) {
+                        subtasks.add(record);
+                    } else {
+                        sink.accept(record);
+                    }
+                }
+                chunk = next;
+            }
+        }
+
+        subtasks.forEach(sink);
+    }
+
+    // Последовательное чтение по одной записи в порядке строк, без накопления блоков и Subtask.
+    // Поток не закрывается.
+    static void stream(Reader source, Consumer<TaskRecord> sink) throws IOException {
+        CsvRecordReader reader = new CsvRecordReader(source);
+        reader.next();
+        String record;
+        while ((record = reader.next()) != null) {
+            if (!record.isEmpty()) {
+                sink.accept(TaskCsvCodec.parse(record));
+            }
+        }
+    }
+
+    static void write(File target, Collection<? extends Task> tasks, Collection<? extends Task> epics,
+                      Collection<? extends Task> subtasks) throws IOException {
+        try (OutputStream output = new FileOutputStream(target)) {
+            write(output, tasks, epics, subtasks);
+        }
+    }
+
+    // Запись снимка через один переиспользуемый StringBuilder. Поток не закрывается: через него может
+    // писаться сжатый снимок.
+    static void write(OutputStream target, Collection<? extends Task> tasks, Collection<? extends Task> epics,
+                      Collection<? extends Task> subtasks) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write(HEADER);
+        writer.write('\n');
+
+        StringBuilder line = new StringBuilder(256);
+        for (Collection<? extends Task> group : List.of(tasks, epics, subtasks)) {
+            for (Task task : group) {
+                line.setLength(0);
+                TaskCsvCodec.append(line, task);
+                line.append('\n');
+                writer.append(line);
+            }
+        }
+        writer.flush();
+    }
+
+    private static List<String> readChunk(CsvRecordReader reader) throws IOException {
+        List<String> chunk = new ArrayList<>(CHUNK_RECORDS);
+        String record;
+        while (chunk.size() < CHUNK_RECORDS && (record = reader.next()) != null) {
+            if (!record.isEmpty()) {
+                chunk.add(record);
+            }
+        }
+        return chunk;
+    }
+
+    private static CompletableFuture<List<TaskRecord>> parseAsync(List<String> chunk) {
+        return CompletableFuture.supplyAsync(() -> chunk.parallelStream()
+                .map(TaskCsvCodec::parse)
+                .toList());
+    }
+
+    private static List<TaskRecord> join(CompletableFuture<List<TaskRecord>> parsing) {
+        try {
+            return parsing.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -5,18 +5,158 @@ import exceptions.ManagerSaveException;
 import model.*;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class FileBackedTaskManager extends InMemoryTaskManager implements TaskManager, AutoCloseable {
+    private static final String SEGMENT_SUFFIX = ".journal.";
 
-public class FileBackedTaskManager extends InMemoryTaskManager implements TaskManager {
     private final File file;
+    private final PersistenceMode mode;
+    private final FlushPolicy flushPolicy;
+    private final SnapshotFormat format;
+    private final FsyncPolicy fsyncPolicy;
+    private final boolean compressed;
+    private final WriteQueue writeQueue;
+    private final int descriptionCacheSize;
+    private final int shards;
+    private long lastJournalSync = System.nanoTime();
+    private boolean journalUnsynced = false;
+    private boolean journalOpened = false;
+
+    // Отложенная запись: изменения накапливаются и записываются одним обращением к диску.
+    private final Object flushLock = new Object();
+    private final List<String> pendingRecords = new ArrayList<>();
+    private boolean dirty = false;
+    private int pendingMutations = 0;
+    private boolean flushRequested = false;
+    private ScheduledExecutorService flusher;
+    private boolean journalSyncScheduled = false;
+    private boolean closing = false;
+    private boolean backgroundStarted = false;
+
+    // Изменения текущего пакета, которые будут сохранены одной записью после его успешного завершения.
+    private final List<String> batchRecords = new ArrayList<>();
+    private int batchMutations = 0;
+
+    // Текущий сегмент журнала, в который дописываются изменения.
+    private int segment = 1;
+    private long segmentBytes = 0;
+    private int segmentRecords = 0;
+
+    // Пороги, после которых журнал сворачивается в новый снимок.
+    private long maxSegmentBytes = 4 * 1024 * 1024;
+    private int maxSegmentRecords = 10_000;
+
+    private ExecutorService compactor;
+    private Future<?> compaction;
+
+    // Страничный снимок: расположение записей в файле и id задач, изменённых с последнего сохранения.
+    private volatile PagedSnapshot paged;
+    private final Set<Integer> dirtyIds = new LinkedHashSet<>();
+
+    // Асинхронная запись: изменения ставятся в очередь, поток writer записывает всё накопленное одной записью.
+    // queueDepth - изменения, ещё не записанные на диск, включая записываемые сейчас.
+    private Thread writer;
+    private final List<QueuedWrite> queuedWrites = new ArrayList<>();
+    private List<QueuedWrite> writingNow = List.of();
+    private int queueDepth = 0;
+    private boolean writerStopped = false;
+    private CompletableFuture<Void> lastQueuedWrite = CompletableFuture.completedFuture(null);
+    private long lastWriteLagNanos = 0;
+    private long completedWrites = 0;
+    private long rejectedWrites = 0;
+
+    // Снимок, из которого описания задач читаются по требованию.
+    private volatile SnapshotDescriptions descriptions;
+    // Предыдущий снимок описаний: закрывается при следующей замене, когда читатели уже перешли на новый.
+    private SnapshotDescriptions retiredDescriptions;
+
+    // Статистика сжатия последнего записанного снимка и распаковки снимка при загрузке.
+    private volatile CompressionStats saveCompressionStats;
+    private CompressionStats loadCompressionStats;
+
+    // Шарды, изменённые с последнего сохранения: бит type.ordinal() * shards + номер шарда.
+    // storedShards - манифест шардов на диске или null. Пока количество шардов в нём не совпадает с настройкой
+    // или после ошибки записи шардов (shardsRewriteNeeded), снимок пишется целиком в новом поколении.
+    private final BitSet dirtyShards = new BitSet();
+    private ShardedSnapshot.Manifest storedShards;
+    private boolean shardsRewriteNeeded = false;
+
+    private RecoveryStats recoveryStats = new RecoveryStats(0, 0);
+
+    // Журнал просмотров рядом со снимком; просмотры внутри пакета записываются после его завершения.
+    // Файл открывается только при первом просмотре: менеджер без просмотров не держит открытый дескриптор.
+    // historyEntries - количество записей в прочитанном при загрузке журнале.
+    private HistoryLog historyLog;
+    private boolean historyOpened = false;
+    private long historyEntries = 0;
+    private boolean historyDisabled = false;
+    private final List<Integer> batchViews = new ArrayList<>();
 
     public FileBackedTaskManager(File file) {
+        this(file, PersistenceMode.SNAPSHOT);
+    }
+
+    public FileBackedTaskManager(File file, PersistenceMode mode) {
+        this(file, StorageOptions.defaults().withMode(mode));
+    }
+
+    public FileBackedTaskManager(File file, StorageOptions options) {
         this.file = file;
+        this.mode = options.mode();
+        this.flushPolicy = options.flushPolicy();
+        this.format = options.format();
+        this.fsyncPolicy = options.fsyncPolicy();
+        this.compressed = options.compressed();
+        this.writeQueue = options.writeQueue();
+        this.descriptionCacheSize = options.descriptionCacheSize();
+        this.shards = options.shards();
+    }
+
+    // Запуск фоновых потоков при первом изменении, а не в конструкторе: потоку нельзя получать ссылку
+    // на не до конца созданный менеджер. До первого изменения записывать нечего.
+    private synchronized void startBackground() {
+        if (backgroundStarted || closing) {
+            return;
+        }
+        backgroundStarted = true;
+        if (!flushPolicy.isSync() && flushPolicy.intervalMillis() > 0) {
+            flusher().scheduleWithFixedDelay(this::backgroundFlush, flushPolicy.intervalMillis(),
+                    flushPolicy.intervalMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (writeQueue.isEnabled()) {
+            writer = new Thread(this::writeQueued, "task-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
     }
 
     // Дополнительное задание
@@ -61,269 +201,1371 @@ public class FileBackedTaskManager extends InMemoryTaskManager implements TaskMa
         return file;
     }
 
-    public static FileBackedTaskManager loadFromFile(File file) {
-        FileBackedTaskManager fileBackedTaskManager = new FileBackedTaskManager(file);
+    public File getHistoryFile() {
+        return new File(file.getPath() + ".history");
+    }
+
+    // Открыт ли сейчас файл журнала просмотров.
+    synchronized boolean isHistoryLogOpen() {
+        return historyLog != null;
+    }
+
+    // Сегменты журнала в порядке записи.
+    public List<File> getJournalSegments() {
+        File directory = file.getAbsoluteFile().getParentFile();
+        String prefix = file.getName() + SEGMENT_SUFFIX;
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix)
+                && name.substring(prefix.length()).chars().allMatch(Character::isDigit)
+                && name.length() > prefix.length());
+        if (files == null) {
+            return new ArrayList<>();
+        }
+
+        List<File> segments = new ArrayList<>(List.of(files));
+        segments.sort(Comparator.comparingInt(FileBackedTaskManager::segmentNumber));
+        return segments;
+    }
+
+    // Настройка порогов сворачивания журнала по размеру текущего сегмента и количеству записей в нём.
+    public void setCompactionThresholds(long maxSegmentBytes, int maxSegmentRecords) {
+        if (maxSegmentBytes <= 0 || maxSegmentRecords <= 0) {
+            throw new IllegalArgumentException("Пороги сворачивания журнала должны быть положительными");
+        }
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.maxSegmentRecords = maxSegmentRecords;
+    }
+
+    public PersistenceMode getMode() {
+        return mode;
+    }
+
+    public FlushPolicy getFlushPolicy() {
+        return flushPolicy;
+    }
+
+    public SnapshotFormat getFormat() {
+        return format;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public WriteQueue getWriteQueue() {
+        return writeQueue;
+    }
 
-        if (!fileBackedTaskManager.getFile().exists() || file.length() == 0) {
-            return fileBackedTaskManager;
+    public synchronized WriteQueueMetrics getWriteQueueMetrics() {
+        long lag = 0;
+        if (!writingNow.isEmpty()) {
+            lag = System.nanoTime() - writingNow.getFirst().enqueuedNanos();
+        } else if (!queuedWrites.isEmpty()) {
+            lag = System.nanoTime() - queuedWrites.getFirst().enqueuedNanos();
         }
+        return new WriteQueueMetrics(queueDepth, writeQueue.capacity(), lag, lastWriteLagNanos, completedWrites,
+                rejectedWrites);
+    }
 
+    // Future, который завершается, когда все изменения, сделанные до вызова, записаны на диск.
+    // Без очереди записи накопленные изменения записываются сразу в вызывающем потоке.
+    public CompletableFuture<Void> whenPersisted() {
+        if (writeQueue.isEnabled()) {
+            synchronized (this) {
+                return lastQueuedWrite;
+            }
+        }
         try {
-            List<String> lines = Files.readAllLines(fileBackedTaskManager.getFile().toPath(), StandardCharsets.UTF_8);
-            lines.removeFirst();
-            for (String str : lines) {
-                fileBackedTaskManager.taskFromString(str);
+            flush();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    // Степень сжатия и время записи последнего сжатого снимка; null, если сжатый снимок ещё не писался.
+    public CompressionStats getSaveCompressionStats() {
+        return saveCompressionStats;
+    }
+
+    // Степень сжатия и время чтения снимка при загрузке; null, если загруженный снимок не был сжат.
+    public CompressionStats getLoadCompressionStats() {
+        return loadCompressionStats;
+    }
+
+    // Записи журнала, проигранные при загрузке, и объём оборванного хвоста, отброшенного при восстановлении.
+    public RecoveryStats getRecoveryStats() {
+        return recoveryStats;
+    }
+
+    public static FileBackedTaskManager loadFromFile(File file) {
+        return loadFromFile(file, StorageOptions.defaults());
+    }
+
+    public static FileBackedTaskManager loadFromFile(File file, PersistenceMode mode) {
+        return loadFromFile(file, StorageOptions.defaults().withMode(mode));
+    }
+
+    // Загрузка последнего снимка с последующим проигрыванием журнала изменений поверх него.
+    // Формат снимка определяется по заголовку файла, поэтому файл в любом формате читается при любых настройках.
+    public static FileBackedTaskManager loadFromFile(File file, StorageOptions options) {
+        PersistenceMode mode = options.mode();
+        FileBackedTaskManager fileBackedTaskManager = new FileBackedTaskManager(file, options);
+
+        if (fileBackedTaskManager.getFile().exists() && file.length() != 0) {
+            try {
+                if (ShardedSnapshot.isSharded(file)) {
+                    ShardedSnapshot.Manifest stored = ShardedSnapshot.readManifest(file);
+                    readShards(file, stored, fileBackedTaskManager::insertFromFile);
+                    fileBackedTaskManager.storedShards = stored;
+                } else if (CompressedSnapshot.isCompressed(file)) {
+                    fileBackedTaskManager.loadCompressionStats = CompressedSnapshot.read(file,
+                            fileBackedTaskManager::insertFromFile);
+                } else if (PagedSnapshot.isPaged(file)) {
+                    PagedSnapshot snapshot = PagedSnapshot.read(file, fileBackedTaskManager::insertFromFile);
+                    if (options.format() == SnapshotFormat.PAGED && snapshot.isUpdatable()) {
+                        fileBackedTaskManager.paged = snapshot;
+                    }
+                } else if (BinarySnapshot.isBinary(file) && options.isLazyDescriptions()) {
+                    fileBackedTaskManager.descriptions = new SnapshotDescriptions(file, options.descriptionCacheSize());
+                    BinarySnapshot.read(file, fileBackedTaskManager::insertFromFile, true);
+                } else if (BinarySnapshot.isBinary(file)) {
+                    BinarySnapshot.read(file, fileBackedTaskManager::insertFromFile);
+                } else {
+                    CsvSnapshot.read(file, fileBackedTaskManager::insertFromFile);
+                }
+            } catch (IOException e) {
+                throw new ManagerReadException("Ошибка при чтении из файла", e);
             }
-        } catch (IOException e) {
-            throw new ManagerReadException("Ошибка при чтении из файла", e);
+            fileBackedTaskManager.finishBulkLoad();
+        }
+
+        List<File> segments = fileBackedTaskManager.getJournalSegments();
+        boolean replayed = fileBackedTaskManager.replayJournal(segments);
+        if (!segments.isEmpty()) {
+            fileBackedTaskManager.segment = segmentNumber(segments.getLast()) + 1;
+        }
+
+        // В режиме SNAPSHOT журнал сворачивается в снимок, иначе при следующей загрузке
+        // он был бы проигран поверх более нового снимка.
+        if (mode == PersistenceMode.SNAPSHOT && replayed) {
+            fileBackedTaskManager.checkpoint();
         }
+        fileBackedTaskManager.journalOpened = true;
+        fileBackedTaskManager.restoreHistory();
 
         return fileBackedTaskManager;
     }
 
+    // Запись полного снимка и очистка журнала: после этого загрузка не проигрывает старые изменения.
+    public void checkpoint() {
+        synchronized (flushLock) {
+            awaitCompaction();
+            synchronized (this) {
+                pendingRecords.clear();
+                dirty = false;
+                pendingMutations = 0;
+                resetJournal();
+            }
+        }
+    }
+
+    // Планировщик фоновых сбросов: создаётся при отложенной записи или при первом отложенном fsync журнала.
+    private synchronized ScheduledExecutorService flusher() {
+        if (flusher == null) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "task-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return flusher;
+    }
+
+    // Запись накопленных изменений на диск. После возврата все изменения, сделанные до вызова, сохранены.
+    public void flush() {
+        synchronized (flushLock) {
+            List<String> records;
+            List<Task> tasks = null;
+            List<Epic> epics = null;
+            List<Subtask> subtasks = null;
+            Map<Integer, Task> changes = null;
+            BitSet shardsToWrite = null;
+
+            synchronized (this) {
+                if (!dirty) {
+                    syncJournal();
+                    return;
+                }
+                dirty = false;
+                pendingMutations = 0;
+                records = new ArrayList<>(pendingRecords);
+                pendingRecords.clear();
+                if (isIncremental()) {
+                    changes = takeChanges();
+                } else if (mode == PersistenceMode.SNAPSHOT) {
+                    dirtyIds.clear();
+                    if (isShardedIncremental()) {
+                        shardsToWrite = takeDirtyShards();
+                        tasks = hasDirtyShards(shardsToWrite, TaskType.TASK) ? getAllTasks() : List.of();
+                        epics = hasDirtyShards(shardsToWrite, TaskType.EPIC) ? getAllEpics() : List.of();
+                        subtasks = hasDirtyShards(shardsToWrite, TaskType.SUBTASK) ? getAllSubtasks() : List.of();
+                    } else {
+                        dirtyShards.clear();
+                        tasks = getAllTasks();
+                        epics = getAllEpics();
+                        subtasks = getAllSubtasks();
+                    }
+                }
+            }
+
+            try {
+                if (changes != null) {
+                    writeChanges(changes);
+                } else if (shardsToWrite != null) {
+                    writeShards(tasks, epics, subtasks, shardsToWrite);
+                } else if (mode == PersistenceMode.SNAPSHOT) {
+                    writeSnapshot(tasks, epics, subtasks);
+                } else {
+                    appendRecords(records);
+                    syncJournal();
+                }
+            } catch (RuntimeException e) {
+                // Изменения остаются в очереди и будут записаны следующей попыткой.
+                synchronized (this) {
+                    dirty = true;
+                    pendingRecords.addAll(0, records);
+                    if (changes != null) {
+                        dirtyIds.addAll(changes.keySet());
+                    }
+                    if (shardsToWrite != null) {
+                        dirtyShards.or(shardsToWrite);
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    // Запись накопленных изменений и остановка фоновых потоков.
+    @Override
+    public void close() {
+        synchronized (this) {
+            closing = true;
+            if (flusher != null) {
+                flusher.shutdown();
+            }
+        }
+        stopWriter();
+        flush();
+        completeQueuedWrites();
+        closeHistory();
+        awaitCompaction();
+        if (compactor != null) {
+            compactor.shutdown();
+        }
+        closeRetiredDescriptions();
+    }
+
+    // Закрытие предыдущего снимка описаний: после close() новых снимков нет, и ссылки на него не выдаются.
+    private void closeRetiredDescriptions() {
+        SnapshotDescriptions stale;
+        synchronized (this) {
+            stale = retiredDescriptions;
+            retiredDescriptions = null;
+        }
+        if (stale != null) {
+            try {
+                stale.close();
+            } catch (IOException ignored) {
+                // Файл открыт только для чтения, незаписанных данных в нём нет.
+            }
+        }
+    }
+
+    // Ожидание завершения фонового сворачивания журнала, если оно запущено.
+    public void awaitCompaction() {
+        if (compaction == null) {
+            return;
+        }
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ManagerSaveException("Ожидание сворачивания журнала прервано", e);
+        } catch (ExecutionException e) {
+            throw new ManagerSaveException("Ошибка при сворачивании журнала", e.getCause());
+        } finally {
+            compaction = null;
+        }
+    }
+
+    // Пакет сохраняется один раз после успешного завершения. При откате файл не изменяется,
+    // так как до завершения пакета ничего не записывалось.
     @Override
-    public Task createTask(String name, String description, Status status) {
+    public synchronized void inBatch(Consumer<TaskManager> action) {
+        if (isInBatch()) {
+            super.inBatch(action);
+            return;
+        }
+        awaitQueueSpace();
+
+        try {
+            super.inBatch(action);
+            if (batchMutations > 0) {
+                persistChanges(new ArrayList<>(batchRecords), batchMutations);
+            }
+            batchViews.forEach(this::appendView);
+        } finally {
+            batchRecords.clear();
+            batchMutations = 0;
+            batchViews.clear();
+        }
+    }
+
+    @Override
+    public synchronized Task getTask(int id) {
+        Task task = super.getTask(id);
+        recordView(task);
+        return task;
+    }
+
+    @Override
+    public synchronized Epic getEpic(int id) {
+        Epic epic = super.getEpic(id);
+        recordView(epic);
+        return epic;
+    }
+
+    @Override
+    public synchronized Subtask getSubtask(int id) {
+        Subtask subtask = super.getSubtask(id);
+        recordView(subtask);
+        return subtask;
+    }
+
+    @Override
+    public synchronized void exportTo(OutputStream target, SnapshotFormat format) {
+        super.exportTo(target, format);
+    }
+
+    // Загруженные задачи сохраняются одним полным снимком, а не записью на каждую задачу. При ошибке загрузка
+    // откатывается, и снимок не пишется. checkpoint() берёт flushLock, поэтому вызывается после выхода из
+    // монитора: порядок блокировок тот же, что у потока записи.
+    @Override
+    public int importFrom(ReadableByteChannel source) {
+        int imported;
+        synchronized (this) {
+            awaitQueueSpace();
+            imported = super.importFrom(source);
+        }
+        checkpoint();
+        return imported;
+    }
+
+    @Override
+    public synchronized Task createTask(String name, String description, Status status) {
+        awaitQueueSpace();
         Task task = super.createTask(name, description, status);
-        save();
+        persist(task);
         return task;
     }
 
     @Override
-    public Epic createEpic(String name, String description) {
+    public synchronized Epic createEpic(String name, String description) {
+        awaitQueueSpace();
         Epic epic = super.createEpic(name, description);
-        save();
+        persist(epic);
         return epic;
     }
 
     @Override
-    public Subtask createSubtask(Epic epic, String name, String description, Status status) {
+    public synchronized Subtask createSubtask(Epic epic, String name, String description, Status status) {
+        awaitQueueSpace();
         Subtask subtask = super.createSubtask(epic, name, description, status);
-        save();
+        persist(subtask);
         return subtask;
     }
 
     @Override
-    public boolean deleteTask(int taskId) {
+    public synchronized boolean deleteTask(int taskId) {
+        awaitQueueSpace();
         if (allTasks.get(taskId) == null) {
             return false;
         }
         super.deleteTask(taskId);
-        save();
+        persistDeletion(TaskType.TASK, taskId);
         return true;
     }
 
     @Override
-    public boolean deleteEpic(int epicId) {
-        if (allEpics.get(epicId) == null) {
+    public synchronized boolean deleteEpic(int epicId) {
+        awaitQueueSpace();
+        Epic epic = allEpics.get(epicId);
+        if (epic == null) {
             return false;
         }
+        markDirty(TaskType.SUBTASK, epic.getSubtasksId());
         super.deleteEpic(epicId);
-        save();
+        persistDeletion(TaskType.EPIC, epicId);
         return true;
     }
 
     @Override
-    public boolean deleteSubtask(int subtaskId) {
+    public synchronized boolean deleteSubtask(int subtaskId) {
+        awaitQueueSpace();
         if (allSubtasks.get(subtaskId) == null) {
             return false;
         }
         super.deleteSubtask(subtaskId);
-        save();
+        persistDeletion(TaskType.SUBTASK, subtaskId);
         return true;
     }
 
     @Override
-    public void deleteAllEpics() {
+    public synchronized void deleteAllEpics() {
+        awaitQueueSpace();
+        markDirty(TaskType.EPIC, allEpics.keySet());
+        markDirty(TaskType.SUBTASK, allSubtasks.keySet());
         super.deleteAllEpics();
-        save();
+        persistClear(TaskType.EPIC);
     }
 
     @Override
-    public void deleteAllSubtasks() {
+    public synchronized void deleteAllSubtasks() {
+        awaitQueueSpace();
+        markDirty(TaskType.SUBTASK, allSubtasks.keySet());
         super.deleteAllSubtasks();
-        save();
+        persistClear(TaskType.SUBTASK);
     }
 
     @Override
-    public void deleteAllTasks() {
+    public synchronized void deleteAllTasks() {
+        awaitQueueSpace();
+        markDirty(TaskType.TASK, allTasks.keySet());
         super.deleteAllTasks();
-        save();
+        persistClear(TaskType.TASK);
     }
 
     @Override
-    public void updateStatus(Task task, Status status) {
+    public synchronized void updateStatus(Task task, Status status) {
+        awaitQueueSpace();
         super.updateStatus(task, status);
-        save();
+        persist(task);
     }
 
     @Override
-    public void updateDescription(Task task, String description) {
+    public synchronized void updateDescription(Task task, String description) {
+        awaitQueueSpace();
         super.updateDescription(task, description);
-        save();
+        persist(task);
     }
 
     @Override
-    public void updateName(Task task, String name) {
+    public synchronized void updateName(Task task, String name) {
+        awaitQueueSpace();
         super.updateName(task, name);
-        save();
+        persist(task);
     }
 
     @Override
-    public void setStartTimeAndDuration(Task task, LocalDateTime localDateTime, Duration duration) {
+    public synchronized void setStartTimeAndDuration(Task task, LocalDateTime localDateTime, Duration duration) {
+        awaitQueueSpace();
         super.setStartTimeAndDuration(task, localDateTime, duration);
+        persist(task);
+    }
+
+    // Принятые слоты сохраняются одной записью пакета, а не по записи на задачу.
+    @Override
+    public synchronized Map<Task, ScheduleOutcome> scheduleAll(Map<Task, TimeSlot> slots) {
+        List<Map<Task, ScheduleOutcome>> report = new ArrayList<>(1);
+        inBatch(manager -> {
+            report.add(super.scheduleAll(slots));
+            report.get(0).forEach((task, outcome) -> {
+                if (outcome == ScheduleOutcome.ACCEPTED) {
+                    persist(task);
+                }
+            });
+        });
+        return report.get(0);
+    }
+
+    // Просмотр дописывается в журнал просмотров; внутри пакета - после его успешного завершения.
+    private void recordView(Task task) {
+        if (task == null) {
+            return;
+        }
+        if (isInBatch()) {
+            batchViews.add(task.getId());
+        } else {
+            appendView(task.getId());
+        }
+    }
+
+    // Журнал просмотров переписывается текущей историей, когда записей в нём стало вдвое больше, чем задач
+    // в истории. Новый менеджер, не загруженный из файла, начинает журнал заново. Журнал только ускоряет
+    // прогрев истории, поэтому ошибка записи отключает его, а не прерывает чтение задачи.
+    private void appendView(int id) {
+        if (historyDisabled) {
+            return;
+        }
+        try {
+            if (historyLog == null) {
+                File historyFile = getHistoryFile();
+                historyLog = historyOpened ? HistoryLog.append(historyFile, historyEntries)
+                        : HistoryLog.create(historyFile);
+                historyOpened = true;
+            }
+            historyLog.append(id);
+            if (historyLog.entries() > 2L * inMemoryHistoryManager.size() + 1024) {
+                List<Integer> ids = inMemoryHistoryManager.getHistory().stream().map(Task::getId).toList();
+                historyLog = historyLog.rewrite(ids);
+            }
+        } catch (IOException e) {
+            disableHistory();
+        }
+    }
+
+    // Восстановление истории за один проход по журналу от последнего просмотра к первому: позицию задачи
+    // определяет её последний просмотр, удалённые задачи пропускаются. Нечитаемый журнал не мешает загрузке:
+    // история начинается заново, а журнал пересоздаётся при первом просмотре. Для дописывания журнал
+    // открывается только при первом просмотре.
+    private void restoreHistory() {
+        File historyFile = getHistoryFile();
+        List<Task> newestFirst = new ArrayList<>();
+        Set<Integer> seen = new HashSet<>();
+        try {
+            long entries = HistoryLog.read(historyFile, id -> {
+                if (seen.add(id)) {
+                    Task task = allTasks.get(id);
+                    if (task == null) {
+                        task = allEpics.get(id);
+                    }
+                    if (task == null) {
+                        task = allSubtasks.get(id);
+                    }
+                    if (task != null) {
+                        newestFirst.add(task);
+                    }
+                }
+                return true;
+            });
+            historyEntries = entries;
+            historyOpened = true;
+        } catch (IOException e) {
+            newestFirst.clear();
+        }
+        inMemoryHistoryManager.restore(newestFirst.reversed());
+    }
+
+    private void disableHistory() {
+        historyDisabled = true;
+        if (historyLog != null) {
+            try {
+                historyLog.close();
+            } catch (IOException ignored) {
+                // Журнал уже отключён, повторять закрытие незачем.
+            }
+            historyLog = null;
+        }
+    }
+
+    private synchronized void closeHistory() {
+        if (historyLog == null) {
+            return;
+        }
+        try {
+            historyLog.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при закрытии истории просмотров", e);
+        }
+        historyLog = null;
+    }
+
+    // Сохранение изменённой или созданной задачи.
+    private void persist(Task task) {
+        markDirty(TaskCsvCodec.typeOf(task), List.of(task.getId()));
+        persistChange(mode == PersistenceMode.JOURNAL ? "PUT," + TaskCsvCodec.format(task) : null);
+    }
+
+    // Сохранение удаления задачи по id.
+    private void persistDeletion(TaskType type, int id) {
+        markDirty(type, List.of(id));
+        persistChange("DELETE," + id);
+    }
+
+    // Сохранение очистки всех задач одного типа.
+    private void persistClear(TaskType type) {
+        persistChange("CLEAR," + type);
+    }
+
+    // Запоминание изменённых задач: для страничного снимка - их id, для шардов - их шарды.
+    // Без страниц и шардов файл переписывается целиком.
+    private void markDirty(TaskType type, Collection<Integer> ids) {
+        if (mode != PersistenceMode.SNAPSHOT) {
+            return;
+        }
+        if (format == SnapshotFormat.PAGED) {
+            dirtyIds.addAll(ids);
+        }
+        if (shards > 0) {
+            for (int id : ids) {
+                dirtyShards.set(type.ordinal() * shards + ShardedSnapshot.shardOf(id, shards));
+            }
+        }
+    }
+
+    // Изменение внутри пакета откладывается до его завершения, остальные сохраняются сразу.
+    private void persistChange(String record) {
+        if (isInBatch()) {
+            batchMutations++;
+            if (mode == PersistenceMode.JOURNAL) {
+                batchRecords.add(record);
+            }
+            return;
+        }
+        persistChanges(mode == PersistenceMode.JOURNAL ? List.of(record) : List.of(), 1);
+    }
+
+    // Синхронная запись изменений либо постановка их в очередь отложенной или асинхронной записи.
+    private void persistChanges(List<String> records, int mutations) {
+        startBackground();
+        if (writeQueue.isEnabled() && !writerStopped) {
+            enqueueWrite(records, mutations);
+            return;
+        }
+        if (flushPolicy.isSync()) {
+            if (mode == PersistenceMode.SNAPSHOT) {
+                saveChanges();
+            } else {
+                appendRecords(records);
+            }
+            return;
+        }
+
+        dirty = true;
+        pendingMutations += mutations;
+        if (mode == PersistenceMode.JOURNAL) {
+            pendingRecords.addAll(records);
+        }
+        if (flushPolicy.maxPendingMutations() > 0 && pendingMutations >= flushPolicy.maxPendingMutations()
+                && !flushRequested) {
+            flushRequested = true;
+            flusher().execute(this::backgroundFlush);
+        }
+    }
+
+    // Изменения попадают в те же буферы, что и при отложенной записи, а в очередь ставится отметка с Future,
+    // который завершит поток записи.
+    private void enqueueWrite(List<String> records, int mutations) {
+        dirty = true;
+        pendingMutations += mutations;
+        if (mode == PersistenceMode.JOURNAL) {
+            pendingRecords.addAll(records);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        queuedWrites.add(new QueuedWrite(done, System.nanoTime()));
+        queueDepth++;
+        lastQueuedWrite = done;
+        notifyAll();
+    }
+
+    // Проверка места в очереди до применения изменения в памяти. Ожидание через wait() отпускает монитор,
+    // поэтому поток записи может продолжить работу. Изменения внутри пакета в очередь не ставятся.
+    private void awaitQueueSpace() {
+        if (!writeQueue.isEnabled() || writerStopped || isInBatch() || queueDepth < writeQueue.capacity()) {
+            return;
+        }
+        if (writeQueue.backpressure() == Backpressure.REJECT) {
+            rejectedWrites++;
+            throw new ManagerSaveException("Очередь записи переполнена: " + queueDepth + " изменений", null);
+        }
+        while (queueDepth >= writeQueue.capacity() && !writerStopped) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ManagerSaveException("Ожидание места в очереди записи прервано", e);
+            }
+        }
+    }
+
+    // Цикл потока записи: всё, что накопилось в очереди, записывается одним flush(). Future завершаются
+    // после записи; при ошибке - с этой ошибкой, а изменения остаются в буфере до следующей записи.
+    private void writeQueued() {
+        while (true) {
+            List<QueuedWrite> taken;
+            synchronized (this) {
+                while (queuedWrites.isEmpty() && !writerStopped) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queuedWrites.isEmpty()) {
+                    return;
+                }
+                taken = new ArrayList<>(queuedWrites);
+                queuedWrites.clear();
+                writingNow = taken;
+            }
+
+            RuntimeException failure = null;
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+
+            synchronized (this) {
+                queueDepth -= taken.size();
+                lastWriteLagNanos = System.nanoTime() - taken.getFirst().enqueuedNanos();
+                completedWrites++;
+                writingNow = List.of();
+                notifyAll();
+            }
+            for (QueuedWrite write : taken) {
+                if (failure == null) {
+                    write.done().complete(null);
+                } else {
+                    write.done().completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    // Остановка потока записи после того, как он запишет всё, что уже стоит в очереди.
+    private void stopWriter() {
+        Thread thread;
+        synchronized (this) {
+            writerStopped = true;
+            notifyAll();
+            thread = writer;
+        }
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ManagerSaveException("Ожидание потока записи прервано", e);
+        }
+    }
+
+    // Изменения, поставленные в очередь во время остановки потока записи, уже записаны flush() в close().
+    private synchronized void completeQueuedWrites() {
+        queuedWrites.forEach(write -> write.done().complete(null));
+        queuedWrites.clear();
+        queueDepth = 0;
+    }
+
+    // Ошибка фоновой записи не теряет изменения: они остаются в очереди до следующей попытки,
+    // а явный flush() или close() сообщит об ошибке вызывающему.
+    private void backgroundFlush() {
+        synchronized (this) {
+            flushRequested = false;
+        }
+        try {
+            flush();
+        } catch (RuntimeException ignored) {
+            // Повтор при следующем срабатывании политики.
+        }
+    }
+
+    // Записи, не сброшенные политикой every, сбрасываются в фоне по истечении периода, даже если новых записей
+    // больше не будет. После close() сброс выполняет сам close().
+    private synchronized void scheduleJournalSync(long delayMillis) {
+        if (journalSyncScheduled || closing) {
+            return;
+        }
+        journalSyncScheduled = true;
+        flusher().schedule(this::backgroundSync, Math.max(0, delayMillis), TimeUnit.MILLISECONDS);
+    }
+
+    private void backgroundSync() {
+        synchronized (this) {
+            journalSyncScheduled = false;
+        }
+        try {
+            flush();
+        } catch (RuntimeException ignored) {
+            // Записи остаются несброшенными до следующей записи, flush() или close().
+        }
+    }
+
+    // Дописывание записей в журнал одним обращением к файлу. Стоимость не зависит от количества задач.
+    private void appendRecords(List<String> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (!journalOpened) {
+            // Новый менеджер начинает с пустого снимка, а не поверх чужого журнала.
+            synchronized (this) {
+                resetJournal();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer buffer = ByteBuffer.wrap(JournalFrames.encode(records, channel.size() == 0));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            segmentBytes = channel.size();
+            journalUnsynced = true;
+            long sinceSync = System.nanoTime() - lastJournalSync;
+            if (fsyncPolicy.intervalMillis() == 0 || (!fsyncPolicy.isNever()
+                    && sinceSync >= TimeUnit.MILLISECONDS.toNanos(fsyncPolicy.intervalMillis()))) {
+                channel.force(false);
+                lastJournalSync = System.nanoTime();
+                journalUnsynced = false;
+            } else if (!fsyncPolicy.isNever()) {
+                scheduleJournalSync(fsyncPolicy.intervalMillis() - TimeUnit.NANOSECONDS.toMillis(sinceSync));
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при записи в журнал", e);
+        }
+        segmentRecords += records.size();
+
+        if (segmentBytes >= maxSegmentBytes || segmentRecords >= maxSegmentRecords) {
+            startCompaction();
+        }
+    }
+
+    private void resetJournal() {
         save();
+        dropSegmentsUpTo(Integer.MAX_VALUE);
+        segmentBytes = 0;
+        segmentRecords = 0;
+        journalOpened = true;
     }
 
-    private void save() {
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+    // Сворачивание журнала: запись продолжается в новый сегмент, а снимок состояния на момент
+    // переключения пишется в фоне. Копируются только ссылки на задачи; если задача изменится во время
+    // записи снимка, её итоговое состояние всё равно восстановит запись из нового сегмента.
+    private void startCompaction() {
+        if (compaction != null && !compaction.isDone()) {
+            return;
+        }
+        if (compaction != null) {
+            awaitCompaction();
+        }
 
-            writer.write("id,type,name,status,description,epic,startTime,duration,endTime");
-            writer.newLine();
+        int sealedSegment = segment;
+        segment++;
+        segmentBytes = 0;
+        segmentRecords = 0;
+
+        List<Task> tasks;
+        List<Epic> epics;
+        List<Subtask> subtasks;
+        synchronized (this) {
+            tasks = getAllTasks();
+            epics = getAllEpics();
+            subtasks = getAllSubtasks();
+        }
 
-            for (Task task : getAllTasks()) {
-                writer.write(taskToString(task));
-                writer.newLine();
+        if (compactor == null) {
+            compactor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        compaction = compactor.submit(() -> {
+            writeSnapshot(tasks, epics, subtasks);
+            dropSegmentsUpTo(sealedSegment);
+        });
+    }
+
+    private File segmentFile(int number) {
+        return new File(file.getPath() + SEGMENT_SUFFIX + number);
+    }
+
+    private static int segmentNumber(File segmentFile) {
+        String name = segmentFile.getName();
+        return Integer.parseInt(name.substring(name.lastIndexOf('.') + 1));
+    }
+
+    // Удаление сегментов, изменения из которых уже содержатся в снимке.
+    private void dropSegmentsUpTo(int lastSegment) {
+        for (File segmentFile : getJournalSegments()) {
+            if (segmentNumber(segmentFile) > lastSegment) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(segmentFile.toPath());
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка при удалении сегмента журнала", e);
+            }
+        }
+    }
+
+    // Проигрывание журнала. Записи описывают итоговое состояние задачи, поэтому повторное
+    // проигрывание поверх снимка, уже содержащего эти изменения, даёт тот же результат.
+    // Сегмент с кадрами обрезается по оборванному хвосту; сегменты прежнего текстового формата читаются построчно.
+    private boolean replayJournal(List<File> segments) {
+        int records = 0;
+        long discarded = 0;
+        for (File segmentFile : segments) {
+            try {
+                if (JournalFrames.isFramed(segmentFile)) {
+                    RecoveryStats stats = JournalFrames.read(segmentFile, segmentFile == segments.getLast(),
+                            this::applyRecord);
+                    records += stats.recoveredRecords();
+                    discarded += stats.discardedBytes();
+                    continue;
+                }
+                try (CsvRecordReader reader = new CsvRecordReader(new InputStreamReader(
+                        new FileInputStream(segmentFile), StandardCharsets.UTF_8))) {
+                    String record;
+                    while ((record = reader.next()) != null) {
+                        if (!record.isEmpty()) {
+                            applyRecord(record);
+                            records++;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new ManagerReadException("Ошибка при чтении журнала", e);
             }
-            for (Epic epic : getAllEpics()) {
-                writer.write(taskToString(epic));
-                writer.newLine();
+        }
+        recoveryStats = new RecoveryStats(records, discarded);
+        return !segments.isEmpty();
+    }
+
+    private void applyRecord(String record) {
+        int separator = record.indexOf(',');
+        String operation = record.substring(0, separator);
+
+        switch (operation) {
+            case "PUT" -> restoreTask(TaskCsvCodec.parse(record, separator + 1));
+            case "DELETE" -> {
+                int id = Integer.parseInt(record, separator + 1, record.length(), 10);
+                if (allTasks.containsKey(id)) {
+                    super.deleteTask(id);
+                } else if (allEpics.containsKey(id)) {
+                    super.deleteEpic(id);
+                } else {
+                    super.deleteSubtask(id);
+                }
             }
-            for (Subtask subtask : getAllSubtasks()) {
-                writer.write(taskToString(subtask));
-                writer.newLine();
+            case "CLEAR" -> {
+                switch (TaskType.valueOf(record.substring(separator + 1))) {
+                    case TASK -> super.deleteAllTasks();
+                    case EPIC -> super.deleteAllEpics();
+                    case SUBTASK -> super.deleteAllSubtasks();
+                }
             }
+            default -> throw new ManagerReadException("Неизвестная операция в журнале: " + operation, null);
+        }
+    }
+
+    // Создание задачи из записи журнала или обновление уже существующей.
+    private void restoreTask(TaskRecord record) {
+        Task existing = switch (record.type()) {
+            case TASK -> allTasks.get(record.id());
+            case EPIC -> allEpics.get(record.id());
+            case SUBTASK -> allSubtasks.get(record.id());
+        };
 
+        if (existing == null) {
+            // Снимок может быть новее сегмента: Epic уже удалён, и удаление будет проиграно позже.
+            if (record.type() == TaskType.SUBTASK && !allEpics.containsKey(record.parentId())) {
+                return;
+            }
+            Task task = insertFromFile(record);
+            if (task.getStartTime() != null) {
+                schedule(task);
+            }
+            if (task instanceof Subtask subtask) {
+                Epic parent = allEpics.get(subtask.getParentId());
+                updateEpicStatus(parent);
+                updateEpicStartTimeAndDuration(parent);
+            }
+            return;
+        }
+
+        existing.setName(record.name());
+        existing.setDescription(record.description());
+        if (existing instanceof Epic) {
+            return;
+        }
+
+        unschedule(existing);
+        existing.setStatus(record.status());
+        existing.setStartTime(record.startTime());
+        existing.setDurationTime(record.duration());
+        if (existing.getStartTime() != null) {
+            schedule(existing);
+        }
+
+        if (existing instanceof Subtask subtask) {
+            Epic parent = allEpics.get(subtask.getParentId());
+            updateEpicStatus(parent);
+            updateEpicStartTimeAndDuration(parent);
+        }
+    }
+
+    private void save() {
+        dirtyIds.clear();
+        dirtyShards.clear();
+        writeSnapshot(getAllTasks(), getAllEpics(), getAllSubtasks());
+    }
+
+    // Сохранение в режиме SNAPSHOT: в страничном формате на диск пишутся только изменённые задачи,
+    // при шардах - только изменённые шарды, в остальных случаях - полный снимок.
+    private void saveChanges() {
+        if (isIncremental()) {
+            writeChanges(takeChanges());
+        } else if (isShardedIncremental()) {
+            BitSet which = takeDirtyShards();
+            writeShards(hasDirtyShards(which, TaskType.TASK) ? getAllTasks() : List.of(),
+                    hasDirtyShards(which, TaskType.EPIC) ? getAllEpics() : List.of(),
+                    hasDirtyShards(which, TaskType.SUBTASK) ? getAllSubtasks() : List.of(), which);
+        } else {
+            save();
+        }
+    }
+
+    private boolean isShardedIncremental() {
+        return shards > 0 && mode == PersistenceMode.SNAPSHOT && storedShards != null
+                && storedShards.shards() == shards && !shardsRewriteNeeded;
+    }
+
+    // Есть ли в which изменённые шарды типа: задачи остальных типов не копируются и не переписываются.
+    private boolean hasDirtyShards(BitSet which, TaskType type) {
+        int from = type.ordinal() * shards;
+        int next = which.nextSetBit(from);
+        return next >= 0 && next < from + shards;
+    }
+
+    private BitSet takeDirtyShards() {
+        BitSet taken = (BitSet) dirtyShards.clone();
+        dirtyShards.clear();
+        return taken;
+    }
+
+    private boolean isIncremental() {
+        return format == SnapshotFormat.PAGED && mode == PersistenceMode.SNAPSHOT && paged != null;
+    }
+
+    // Текущее состояние изменённых задач; null - задача удалена.
+    private Map<Integer, Task> takeChanges() {
+        Map<Integer, Task> changes = new LinkedHashMap<>();
+        for (int id : dirtyIds) {
+            Task task = allTasks.get(id);
+            if (task == null) {
+                task = allEpics.get(id);
+            }
+            if (task == null) {
+                task = allSubtasks.get(id);
+            }
+            changes.put(id, task);
+        }
+        dirtyIds.clear();
+        return changes;
+    }
+
+    // Запись изменённых задач в слоты страничного снимка без переписывания файла. Если свободные слоты
+    // заняли больше половины файла, он переписывается целиком. После ошибки расположение записей в памяти
+    // может не совпадать с файлом, поэтому следующее сохранение тоже будет полным.
+    private void writeChanges(Map<Integer, Task> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        PagedSnapshot snapshot = paged;
+        try {
+            snapshot.update(file, changes, !fsyncPolicy.isNever());
         } catch (IOException e) {
+            paged = null;
             throw new ManagerSaveException("Ошибка при сохранении в файл", e);
         }
+
+        if (snapshot.needsCompaction()) {
+            List<Task> tasks;
+            List<Epic> epics;
+            List<Subtask> subtasks;
+            synchronized (this) {
+                tasks = getAllTasks();
+                epics = getAllEpics();
+                subtasks = getAllSubtasks();
+            }
+            writeSnapshot(tasks, epics, subtasks);
+        }
     }
 
-    private String taskToString(Task task) {
-        return switch (task) {
-            case Subtask subtask -> {
-                String startTime = subtask.getStartTime() != null
-                        ? subtask.getStartTime().format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))
-                        : "None";
-                String endTime = subtask.getEndTime() != null
-                        ? subtask.getEndTime().format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))
-                        : "None";
-
-                yield String.format("%d,%s,%s,%s,%s,%d,%s,%d,%s",
-                        subtask.getId(),
-                        TaskType.SUBTASK,
-                        subtask.getName(),
-                        subtask.getStatus(),
-                        subtask.getDescription(),
-                        subtask.getParentId(),
-                        startTime,
-                        subtask.getDurationTime().toMinutes(),
-                        endTime
-                );
-            }
-            case Epic epic -> {
-                String startTime = epic.getStartTime() != null
-                        ? epic.getStartTime().format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))
-                        : "None";
-                String endTime = epic.getEndTime() != null
-                        ? epic.getEndTime().format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))
-                        : "None";
-
-                yield String.format("%d,%s,%s,%s,%s,%s,%s,%d,%s",
-                        epic.getId(),
-                        TaskType.EPIC,
-                        epic.getName(),
-                        epic.getStatus(),
-                        epic.getDescription(),
-                        "None",
-                        startTime,
-                        epic.getDurationTime().toMinutes(),
-                        endTime
-                );
-            }
-            default -> {
-                String startTime = task.getStartTime() != null
-                        ? task.getStartTime().format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))
-                        : "None";
-                String endTime = task.getEndTime() != null
-                        ? task.getEndTime().format(DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))
-                        : "None";
-
-                yield String.format("%d,%s,%s,%s,%s,%s,%s,%d,%s",
-                        task.getId(),
-                        TaskType.TASK,
-                        task.getName(),
-                        task.getStatus(),
-                        task.getDescription(),
-                        "None",
-                        startTime,
-                        task.getDurationTime().toMinutes(),
-                        endTime
-                );
+    // Атомарная запись снимка: данные пишутся во временный файл, сбрасываются на диск и переименовываются
+    // поверх старого снимка. Сбой во время записи оставляет на месте предыдущий целый снимок.
+    private void writeSnapshot(List<Task> tasks, List<Epic> epics, List<Subtask> subtasks) {
+        if (shards > 0) {
+            writeShards(tasks, epics, subtasks, null);
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            PagedSnapshot snapshot = null;
+            CompressionStats stats = null;
+            BinarySnapshot.DescriptionIndex index = null;
+            if (descriptionCacheSize > 0) {
+                index = BinarySnapshot.writeIndexed(temp, tasks, epics, subtasks);
+            } else if (compressed) {
+                stats = CompressedSnapshot.write(temp, format, tasks, epics, subtasks);
+            } else {
+                switch (format) {
+                    case CSV -> CsvSnapshot.write(temp, tasks, epics, subtasks);
+                    case BINARY -> BinarySnapshot.write(temp, tasks, epics, subtasks);
+                    case PAGED -> snapshot = PagedSnapshot.write(temp, tasks, epics, subtasks);
+                }
             }
-        };
+            replaceWith(temp, file);
+            paged = snapshot;
+            if (stats != null) {
+                saveCompressionStats = stats;
+            }
+            if (index != null) {
+                releaseDescriptions(tasks, epics, subtasks, index);
+            }
+            if (!fsyncPolicy.isNever()) {
+                syncDirectory();
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw new ManagerSaveException("Ошибка при сохранении в файл", e);
+        }
     }
 
-    private Task taskFromString(String value) {
-        String[] str = value.split(",");
+    // Запись шардов: при which == null - всех шардов нового поколения и затем манифеста, который переключает
+    // загрузку на них; иначе только отмеченных в which шардов текущего поколения. Каждый шард заменяется
+    // атомарно, как и обычный снимок. После ошибки неизвестно, какие шарды успели записаться, поэтому
+    // следующее сохранение будет полным. Шарды Subtask пишутся раньше шардов Epic: после сбоя между ними
+    // удалённый Epic остаётся без Subtask, а Subtask без Epic пропускаются при загрузке.
+    private void writeShards(List<Task> tasks, List<Epic> epics, List<Subtask> subtasks, BitSet which) {
+        if (which != null && which.isEmpty()) {
+            return;
+        }
+        ShardedSnapshot.Manifest target = which != null ? storedShards
+                : new ShardedSnapshot.Manifest(shards, storedShards == null ? 1 : storedShards.generation() + 1);
+        try {
+            CompressionStats stats = writeShardsOfType(TaskType.SUBTASK, subtasks, which, target.generation())
+                    .plus(writeShardsOfType(TaskType.TASK, tasks, which, target.generation()))
+                    .plus(writeShardsOfType(TaskType.EPIC, epics, which, target.generation()));
+            if (which == null) {
+                File temp = new File(file.getPath() + ".tmp");
+                ShardedSnapshot.writeManifest(temp, target);
+                replaceWith(temp, file);
+                ShardedSnapshot.Manifest previous = storedShards;
+                storedShards = target;
+                shardsRewriteNeeded = false;
+                deleteShards(previous);
+            }
+            if (compressed) {
+                saveCompressionStats = stats;
+            }
+            if (!fsyncPolicy.isNever()) {
+                syncDirectory();
+            }
+        } catch (IOException e) {
+            shardsRewriteNeeded = true;
+            throw new ManagerSaveException("Ошибка при сохранении в файл", e);
+        }
+    }
 
-        int id = Integer.parseInt(str[0]);
-        TaskType type = TaskType.valueOf(str[1]);
-        String name = str[2];
-        Status status = Status.valueOf(str[3]);
-        String description = str[4];
+    // Возвращает сумму результатов сжатия записанных шардов; без сжатия - нулевой результат.
+    private CompressionStats writeShardsOfType(TaskType type, List<? extends Task> group, BitSet which,
+                                               long generation) throws IOException {
+        CompressionStats stats = new CompressionStats(0, 0, 0);
+        if (which != null && !hasDirtyShards(which, type)) {
+            return stats;
+        }
+        List<List<Task>> parts = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            parts.add(new ArrayList<>());
+        }
+        for (Task task : group) {
+            int shard = ShardedSnapshot.shardOf(task.getId(), shards);
+            if (which == null || which.get(type.ordinal() * shards + shard)) {
+                parts.get(shard).add(task);
+            }
+        }
 
-        LocalDateTime startTime = !str[6].equals("None")
-                ? LocalDateTime.parse(str[6], DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))
-                : null;
-        Duration duration = !str[7].equals("None")
-                ? Duration.ofMinutes(Long.parseLong(str[7]))
-                : Duration.ZERO;
-        LocalDateTime endTime = !str[8].equals("None")
-                ? LocalDateTime.parse(str[8], DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss"))
-                : null;
+        for (int shard = 0; shard < shards; shard++) {
+            if (which != null && !which.get(type.ordinal() * shards + shard)) {
+                continue;
+            }
+            File target = ShardedSnapshot.shardFile(file, generation, type, shard);
+            File temp = new File(target.getPath() + ".tmp");
+            try {
+                if (compressed) {
+                    stats = stats.plus(CompressedSnapshot.write(temp, format, parts.get(shard), List.of(),
+                            List.of()));
+                } else if (format == SnapshotFormat.BINARY) {
+                    BinarySnapshot.write(temp, parts.get(shard), List.of(), List.of());
+                } else {
+                    CsvSnapshot.write(temp, parts.get(shard), List.of(), List.of());
+                }
+                replaceWith(temp, target);
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+        }
+        return stats;
+    }
 
-        if (id >= totalId) {
-            totalId = id + 1;
+    // Шарды прежнего поколения, на которые манифест больше не ссылается.
+    private void deleteShards(ShardedSnapshot.Manifest previous) throws IOException {
+        if (previous == null) {
+            return;
+        }
+        for (TaskType type : TaskType.values()) {
+            for (int shard = 0; shard < previous.shards(); shard++) {
+                Files.deleteIfExists(ShardedSnapshot.shardFile(file, previous.generation(), type, shard).toPath());
+            }
         }
+    }
 
-        return switch (type) {
-            case TASK -> createTaskFromFile(id, name, description, status, startTime, duration);
-            case EPIC -> createEpicFromFile(id, name, description);
-            default -> createSubtaskFromFile(id, Integer.valueOf(str[5]), name, description, status, startTime,
-                    duration);
-        };
+    // Сброс временного файла на диск и атомарная замена им target. Сброс выполняется при любой FsyncPolicy:
+    // без него после сбоя ОС переименование могло бы оказаться на диске раньше содержимого, и вместо
+    // прежнего снимка остался бы пустой или обрезанный файл. Политика управляет только дописыванием журнала.
+    private void replaceWith(File temp, File target) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
     }
 
-    private Task createTaskFromFile(int id, String name, String description, Status status, LocalDateTime startTime,
-                                    Duration duration) {
-        Task task = new Task(id, name, description, status);
-        allTasks.put(id, task);
+    // Параллельное чтение шардов. Записи собираются в списки и добавляются в менеджер в вызывающем потоке:
+    // сначала Task и Epic из всех шардов, затем Subtask, которым нужен уже загруженный Epic. Subtask, чей Epic
+    // не успел записаться до сбоя, пропускается.
+    private static void readShards(File manifest, ShardedSnapshot.Manifest stored, Consumer<TaskRecord> sink)
+            throws IOException {
+        List<CompletableFuture<List<TaskRecord>>> reads = new ArrayList<>();
+        for (TaskType type : TaskType.values()) {
+            for (int shard = 0; shard < stored.shards(); shard++) {
+                File shardFile = ShardedSnapshot.shardFile(manifest, stored.generation(), type, shard);
+                reads.add(CompletableFuture.supplyAsync(() -> readShard(shardFile)));
+            }
+        }
+
+        List<TaskRecord> subtasks = new ArrayList<>();
+        Set<Integer> epics = new HashSet<>();
+        for (CompletableFuture<List<TaskRecord>> read : reads) {
+            List<TaskRecord> records;
+            try {
+                records = read.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof UncheckedIOException unchecked) {
+                    throw unchecked.getCause();
+                }
+                throw e;
+            }
+            for (TaskRecord record : records) {
+                if (record.type() == TaskType.SUBTASK) {
+                    subtasks.add(record);
+                } else {
+                    if (record.type() == TaskType.EPIC) {
+                        epics.add(record.id());
+                    }
+                    sink.accept(record);
+                }
+            }
+        }
+        subtasks.stream().filter(subtask -> epics.contains(subtask.parentId())).forEach(sink);
+    }
 
-        if (startTime != null) {
-            setStartTimeAndDuration(task, startTime, duration);
+    // Формат шарда определяется по заголовку, как и у обычного снимка. Отсутствующий шард пуст.
+    private static List<TaskRecord> readShard(File shardFile) {
+        List<TaskRecord> records = new ArrayList<>();
+        if (!shardFile.exists() || shardFile.length() == 0) {
+            return records;
         }
+        try {
+            if (CompressedSnapshot.isCompressed(shardFile)) {
+                CompressedSnapshot.read(shardFile, records::add);
+            } else if (BinarySnapshot.isBinary(shardFile)) {
+                BinarySnapshot.read(shardFile, records::add);
+            } else {
+                CsvSnapshot.read(shardFile, records::add);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return records;
+    }
 
-        return task;
+    // После записи снимка описания задач заменяются ссылками на новый файл, и их текст больше не держится
+    // в памяти. Задача, описание которой изменилось во время записи, остаётся с текстом до следующего снимка.
+    // Старый файл описаний не закрывается сразу: поток мог взять ссылку на него до замены и ещё читать,
+    // поэтому он закрывается только при следующей замене.
+    private void releaseDescriptions(List<Task> tasks, List<Epic> epics, List<Subtask> subtasks,
+                                     BinarySnapshot.DescriptionIndex index) throws IOException {
+        SnapshotDescriptions current = new SnapshotDescriptions(file, descriptionCacheSize);
+        SnapshotDescriptions stale;
+        synchronized (this) {
+            int i = 0;
+            for (List<? extends Task> group : List.of(tasks, epics, subtasks)) {
+                for (Task task : group) {
+                    String written = index.texts()[i];
+                    boolean unchanged = written == null
+                            ? task.getDescriptionStore() != null
+                            : task.getDescriptionStore() == null && task.getDescription() == written;
+                    if (unchanged) {
+                        task.setDescriptionHandle(current, index.offsets()[i], index.lengths()[i]);
+                    }
+                    i++;
+                }
+            }
+            stale = retiredDescriptions;
+            retiredDescriptions = descriptions;
+            descriptions = current;
+        }
+        if (stale != null) {
+            stale.close();
+        }
     }
 
-    private Epic createEpicFromFile(int id, String name, String description) {
-        Epic epic = new Epic(id, name, description);
-        allEpics.put(id, epic);
-        return epic;
+    // Сброс каталога, чтобы переименование снимка пережило сбой ОС. Не на всех платформах каталог
+    // можно открыть как файл, поэтому ошибка здесь не считается ошибкой сохранения.
+    private void syncDirectory() {
+        try (FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(),
+                StandardOpenOption.READ)) {
+            directory.force(true);
+        } catch (IOException ignored) {
+            // Платформа не поддерживает fsync каталога.
+        }
     }
 
-    private Subtask createSubtaskFromFile(int id, int parentId, String name, String description, Status status,
-                                          LocalDateTime startTime, Duration duration) {
-        Subtask subtask = new Subtask(id, parentId, name, description, status);
-        allEpics.get(parentId).addSubtask(id);
-        allSubtasks.put(id, subtask);
-        updateEpicStatus(allEpics.get(parentId));
+    // Сброс на диск записей журнала, отложенных политикой every.
+    private void syncJournal() {
+        if (!journalUnsynced) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.WRITE)) {
+            channel.force(false);
+        } catch (NoSuchFileException ignored) {
+            // Сегмент уже свёрнут в снимок.
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при сбросе журнала на диск", e);
+        }
+        lastJournalSync = System.nanoTime();
+        journalUnsynced = false;
+    }
 
-        if (startTime != null) {
-            setStartTimeAndDuration(subtask, startTime, duration);
+    // Добавление записи снимка; описание при отложенной загрузке остаётся в файле снимка.
+    private Task insertFromFile(TaskRecord record) {
+        Task inserted = insertLoaded(record.toTask());
+        if (record.descriptionOffset() >= 0) {
+            inserted.setDescriptionHandle(descriptions, record.descriptionOffset(), record.descriptionLength());
         }
+        return inserted;
+    }
 
-        return subtask;
+    private record QueuedWrite(CompletableFuture<Void> done, long enqueuedNanos) {
     }
 }
@@ -0,0 +1,38 @@
+package manager;
+
+// Политика записи изменений FileBackedTaskManager на диск.
+// intervalMillis - период фоновой записи, maxPendingMutations - количество изменений, после которого
+// запись запускается не дожидаясь периода. Нули в обоих полях означают синхронную запись.
+public record FlushPolicy(long intervalMillis, int maxPendingMutations) {
+
+    public FlushPolicy {
+        if (intervalMillis < 0 || maxPendingMutations < 0) {
+            throw new IllegalArgumentException("Параметры политики записи не могут быть отрицательными");
+        }
+    }
+
+    // Каждое изменение записывается сразу в вызывающем потоке.
+    public static FlushPolicy sync() {
+        return new FlushPolicy(0, 0);
+    }
+
+    // Изменения накапливаются и записываются фоновым потоком раз в intervalMillis.
+    public static FlushPolicy interval(long intervalMillis) {
+        if (intervalMillis == 0) {
+            throw new IllegalArgumentException("Период записи должен быть положительным");
+        }
+        return new FlushPolicy(intervalMillis, 0);
+    }
+
+    // Изменения накапливаются и записываются фоновым потоком после каждых maxPendingMutations изменений.
+    public static FlushPolicy count(int maxPendingMutations) {
+        if (maxPendingMutations == 0) {
+            throw new IllegalArgumentException("Количество изменений должно быть положительным");
+        }
+        return new FlushPolicy(0, maxPendingMutations);
+    }
+
+    public boolean isSync() {
+        return intervalMillis == 0 && maxPendingMutations == 0;
+    }
+}
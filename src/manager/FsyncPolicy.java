@@ -0,0 +1,33 @@
+package manager;
+
+// Политика принудительного сброса записей журнала на диск (fsync). Снимок перед заменой сбрасывается всегда.
+// intervalMillis: 0 - после каждой записи, положительное значение - не чаще одного раза за период, но не позже
+// чем через период после записи, -1 - никогда, сброс остаётся на усмотрение операционной системы.
+public record FsyncPolicy(long intervalMillis) {
+    private static final long NEVER = -1;
+
+    public FsyncPolicy {
+        if (intervalMillis < NEVER) {
+            throw new IllegalArgumentException("Некорректный период сброса на диск: " + intervalMillis);
+        }
+    }
+
+    public static FsyncPolicy always() {
+        return new FsyncPolicy(0);
+    }
+
+    public static FsyncPolicy every(long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Период сброса на диск должен быть положительным");
+        }
+        return new FsyncPolicy(intervalMillis);
+    }
+
+    public static FsyncPolicy never() {
+        return new FsyncPolicy(NEVER);
+    }
+
+    public boolean isNever() {
+        return intervalMillis == NEVER;
+    }
+}
@@ -0,0 +1,126 @@
+package manager;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+// Журнал просмотров: MAGIC, версия (1 байт), затем id просмотренных задач (int) в порядке просмотров.
+// Просмотр дописывает один id; порядок истории определяется последним просмотром каждой задачи.
+// Журнал только ускоряет прогрев истории, поэтому на диск принудительно не сбрасывается.
+final class HistoryLog implements Closeable {
+    static final byte[] MAGIC = {'K', 'N', 'H', 'S'};
+    private static final byte VERSION = 1;
+    private static final int HEADER = MAGIC.length + 1;
+
+    private final File file;
+    private final FileChannel channel;
+    private final ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES);
+    private long entries;
+
+    private HistoryLog(File file, FileChannel channel, long entries) {
+        this.file = file;
+        this.channel = channel;
+        this.entries = entries;
+    }
+
+    // Новый пустой журнал поверх прежнего.
+    static HistoryLog create(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writeHeader(channel);
+        return new HistoryLog(file, channel, 0);
+    }
+
+    // Продолжение журнала, прочитанного read(): entries - количество записей в нём.
+    static HistoryLog append(File file, long entries) throws IOException {
+        if (!file.exists() || file.length() < HEADER) {
+            return create(file);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return new HistoryLog(file, channel, entries);
+    }
+
+    // Один проход по журналу от последнего просмотра к первому. Оборванная при сбое последняя запись
+    // отбрасывается. Возвращает количество записей в журнале.
+    static long read(File file, IntPredicate newestFirst) throws IOException {
+        if (!file.exists() || file.length() < HEADER) {
+            return 0;
+        }
+        long entries;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte[] header = new byte[HEADER];
+            buffer.get(header);
+            if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+                throw new IOException("Повреждён заголовок журнала просмотров " + file);
+            }
+            if (header[MAGIC.length] != VERSION) {
+                throw new IOException("Неподдерживаемая версия журнала просмотров: " + header[MAGIC.length]);
+            }
+
+            entries = (size - HEADER) / Integer.BYTES;
+            for (long i = entries - 1; i >= 0; i--) {
+                if (!newestFirst.test(buffer.getInt((int) (HEADER + i * Integer.BYTES)))) {
+                    break;
+                }
+            }
+            if (HEADER + entries * Integer.BYTES < size) {
+                channel.truncate(HEADER + entries * Integer.BYTES);
+            }
+        }
+        return entries;
+    }
+
+    void append(int id) throws IOException {
+        entry.clear();
+        entry.putInt(id).flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry);
+        }
+        entries++;
+    }
+
+    long entries() {
+        return entries;
+    }
+
+    // Замена журнала текущей историей, по одной записи на задачу. Возвращает журнал, открытый на новом файле.
+    HistoryLog rewrite(List<Integer> ids) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            output.write(MAGIC);
+            output.writeByte(VERSION);
+            for (int id : ids) {
+                output.writeInt(id);
+            }
+        }
+        close();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        return append(file, ids.size());
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.put(MAGIC).put(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+    }
+}
@@ -5,6 +5,7 @@ import model.Task;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class InMemoryHistoryManager implements HistoryManager {
@@ -63,6 +64,16 @@ public class InMemoryHistoryManager implements HistoryManager {
         return allTasks;
     }
 
+    // Заполнение пустой истории задачами в порядке просмотров за один проход, без проверок add().
+    void restore(List<Task> tasks) {
+        tasks.forEach(this::linkLast);
+    }
+
+    // Количество задач в истории без копирования списка.
+    int size() {
+        return history.size();
+    }
+
     @Override
     public void add(Task task) {
         if (history.containsKey(task.getId())) {
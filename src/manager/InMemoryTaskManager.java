@@ -1,22 +1,44 @@
 package manager;
 
+import exceptions.ManagerReadException;
+import exceptions.ManagerSaveException;
 import model.Epic;
 import model.Status;
 import model.Subtask;
 import model.Task;
-
+import model.TaskType;
+import model.TimeSlot;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class InMemoryTaskManager implements TaskManager {
+    private static final Duration SLOT_GAP = Duration.ofMinutes(1);
+
     protected static int totalId = 1;
     protected final HashMap<Integer, Task> allTasks;
     protected final HashMap<Integer, Epic> allEpics;
     protected final HashMap<Integer, Subtask> allSubtasks;
+    // id по возрастанию для страниц с курсора; сами задачи по-прежнему ищутся в HashMap.
+    private final TreeSet<Integer> taskIndex = new TreeSet<>();
+    private final TreeSet<Integer> epicIndex = new TreeSet<>();
+    private final TreeSet<Integer> subtaskIndex = new TreeSet<>();
     protected final InMemoryHistoryManager inMemoryHistoryManager;
     protected final TreeSet<Task> tasksByPriority;
 
+    // Состояние на начало пакетного изменения; null вне inBatch.
+    private BatchSnapshot batch;
+
+    // Необязательная сетка слотов для быстрой проверки пересечений; null - проверка только по tasksByPriority.
+    private SlotGrid slotGrid;
+
     public InMemoryTaskManager() {
         allTasks = new HashMap<>();
         allEpics = new HashMap<>();
@@ -25,6 +47,17 @@ public class InMemoryTaskManager implements TaskManager {
         tasksByPriority = new TreeSet<>(Comparator.comparing(Task::getStartTime, Comparator.nullsLast(Comparator.naturalOrder())).thenComparing(Task::getId));
     }
 
+    // Включение сетки слотов длительностью granularity от origin на horizon вперёд. Свободный по сетке
+    // интервал принимается без обращения к tasksByPriority; задачи вне горизонта проверяются только по нему.
+    public void enableSlotGrid(LocalDateTime origin, Duration granularity, Duration horizon) {
+        slotGrid = new SlotGrid(origin, granularity, horizon);
+        tasksByPriority.forEach(task -> slotGrid.mark(task.getStartTime(), task.getEndTime()));
+    }
+
+    public void disableSlotGrid() {
+        slotGrid = null;
+    }
+
     @Override
     public int generateTotalId() {
         return totalId++;
@@ -35,6 +68,7 @@ public class InMemoryTaskManager implements TaskManager {
         int id = generateTotalId();
         Task task = new Task(id, name, description, status);
         allTasks.put(task.getId(), task);
+        taskIndex.add(task.getId());
         return task;
     }
 
@@ -43,6 +77,7 @@ public class InMemoryTaskManager implements TaskManager {
         int id = generateTotalId();
         Epic epic = new Epic(id, name, description);
         allEpics.put(epic.getId(), epic);
+        epicIndex.add(epic.getId());
         return epic;
     }
 
@@ -50,8 +85,10 @@ public class InMemoryTaskManager implements TaskManager {
     public Subtask createSubtask(Epic parent, String name, String description, Status status) {
         int id = generateTotalId();
         Subtask subtask = new Subtask(id, parent.getId(), name, description, status);
+        remember(parent);
         parent.addSubtask(subtask.getId());
         allSubtasks.put(subtask.getId(), subtask);
+        subtaskIndex.add(subtask.getId());
         updateEpicStatus(parent);
         return subtask;
     }
@@ -103,9 +140,10 @@ public class InMemoryTaskManager implements TaskManager {
         if (allTasks.get(taskId) == null) {
             return false;
         }
-        tasksByPriority.remove(allTasks.get(taskId));
+        unschedule(allTasks.get(taskId));
         inMemoryHistoryManager.remove(taskId);
         allTasks.remove(taskId);
+        taskIndex.remove(taskId);
         return true;
     }
 
@@ -114,14 +152,17 @@ public class InMemoryTaskManager implements TaskManager {
         if (allEpics.get(epicId) == null) {
             return false;
         }
-        allEpics.get(epicId).getSubtasksId().forEach(subtaskId -> {
-            tasksByPriority.remove(allSubtasks.get(subtaskId));
+        List<Integer> subtaskIds = allEpics.get(epicId).getSubtasksId();
+        subtaskIds.forEach(subtaskId -> {
+            unschedule(allSubtasks.get(subtaskId));
             inMemoryHistoryManager.remove(subtaskId);
             allSubtasks.remove(subtaskId);
+            subtaskIndex.remove(subtaskId);
         });
-        tasksByPriority.remove(allEpics.get(epicId));
+        unschedule(allEpics.get(epicId));
         inMemoryHistoryManager.remove(epicId);
         allEpics.remove(epicId);
+        epicIndex.remove(epicId);
         return true;
     }
 
@@ -131,10 +172,12 @@ public class InMemoryTaskManager implements TaskManager {
             return false;
         }
         Epic parent = allEpics.get(allSubtasks.get(subtaskId).getParentId());
+        remember(parent);
         parent.removeSubtask(subtaskId);
-        tasksByPriority.remove(allSubtasks.get(subtaskId));
+        unschedule(allSubtasks.get(subtaskId));
         inMemoryHistoryManager.remove(subtaskId);
         allSubtasks.remove(subtaskId);
+        subtaskIndex.remove(subtaskId);
         updateEpicStatus(parent);
         updateEpicStartTimeAndDuration(parent);
         return true;
@@ -143,42 +186,48 @@ public class InMemoryTaskManager implements TaskManager {
     @Override
     public void deleteAllTasks() {
         allTasks.keySet().forEach(taskId -> {
-            tasksByPriority.remove(allTasks.get(taskId));
+            unschedule(allTasks.get(taskId));
             inMemoryHistoryManager.remove(taskId);
         });
         allTasks.clear();
+        taskIndex.clear();
     }
 
     @Override
     public void deleteAllEpics() {
         allSubtasks.keySet().forEach(subtaskId -> {
-            tasksByPriority.remove(allSubtasks.get(subtaskId));
+            unschedule(allSubtasks.get(subtaskId));
             inMemoryHistoryManager.remove(subtaskId);
         });
         allEpics.keySet().forEach(taskId -> {
-            tasksByPriority.remove(allEpics.get(taskId));
+            unschedule(allEpics.get(taskId));
             inMemoryHistoryManager.remove(taskId);
         });
         allEpics.clear();
+        epicIndex.clear();
         allSubtasks.clear();
+        subtaskIndex.clear();
     }
 
     @Override
     public void deleteAllSubtasks() {
         allSubtasks.keySet().forEach(subtaskId -> {
-            tasksByPriority.remove(allSubtasks.get(subtaskId));
+            unschedule(allSubtasks.get(subtaskId));
             inMemoryHistoryManager.remove(subtaskId);
         });
         allEpics.values().forEach(epic -> {
+            remember(epic);
             epic.removeAllSubtask();
             updateEpicStatus(epic);
             updateEpicStartTimeAndDuration(epic);
         });
         allSubtasks.clear();
+        subtaskIndex.clear();
     }
 
     @Override
     public void updateStatus(Task task, Status status) {
+        remember(task);
         switch (task) {
             case Subtask subtask -> {
                 subtask.setStatus(status);
@@ -195,33 +244,280 @@ public class InMemoryTaskManager implements TaskManager {
 
     @Override
     public void updateName(Task task, String name) {
+        remember(task);
         task.setName(name);
     }
 
     @Override
     public void updateDescription(Task task, String description) {
+        remember(task);
         task.setDescription(description);
     }
 
+    // Пакетное изменение: при исключении внутри action состояние менеджера возвращается к исходному.
+    // Вложенный вызов выполняется в рамках внешнего пакета. Счётчик id общий для всех менеджеров,
+    // поэтому при откате он не возвращается: id, выданные в пакете, больше не используются.
+    @Override
+    public void inBatch(Consumer<TaskManager> action) {
+        if (batch != null) {
+            action.accept(this);
+            return;
+        }
+
+        batch = new BatchSnapshot(new HashMap<>(allTasks), new HashMap<>(allEpics), new HashMap<>(allSubtasks),
+                new TreeSet<>(tasksByPriority), inMemoryHistoryManager.getHistory(), new HashMap<>());
+        try {
+            action.accept(this);
+        } catch (RuntimeException | Error e) {
+            rollback(batch);
+            throw e;
+        } finally {
+            batch = null;
+        }
+    }
+
+    // Записи выгружаются прямо из HashMap: сначала Task, затем Epic, затем Subtask.
+    @Override
+    public void exportTo(OutputStream target, SnapshotFormat format) {
+        try {
+            OutputStream output = new BufferedOutputStream(target, 64 * 1024);
+            switch (format) {
+                case CSV -> CsvSnapshot.write(output, allTasks.values(), allEpics.values(), allSubtasks.values());
+                case BINARY -> BinarySnapshot.write(output, allTasks.values(), allEpics.values(),
+                        allSubtasks.values());
+                case PAGED -> throw new IllegalArgumentException("Выгрузка поддерживает только форматы CSV и BINARY");
+            }
+            output.flush();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка при выгрузке задач", e);
+        }
+    }
+
+    @Override
+    public void exportTo(WritableByteChannel target, SnapshotFormat format) {
+        exportTo(Channels.newOutputStream(target), format);
+    }
+
+    // Записи добавляются по мере чтения. Subtask, чей Epic ещё не прочитан, ждёт его в памяти; в выгрузке
+    // exportTo Epic идут раньше Subtask, поэтому таких нет. Статус и время Epic пересчитываются один раз
+    // в конце. Задача, пересекающаяся по времени с уже добавленными, остаётся без времени.
+    // В пустой менеджер задачи загружаются без снимка пакета: при ошибке он просто снова очищается.
+    @Override
+    public int importFrom(ReadableByteChannel source) {
+        if (batch == null && allTasks.isEmpty() && allEpics.isEmpty() && allSubtasks.isEmpty()) {
+            try {
+                return importAll(source);
+            } catch (RuntimeException | Error e) {
+                rollback(new BatchSnapshot(Map.of(), Map.of(), Map.of(), new TreeSet<>(),
+                        inMemoryHistoryManager.getHistory(), Map.of()));
+                throw e;
+            }
+        }
+        int[] imported = {0};
+        inBatch(manager -> imported[0] = importAll(source));
+        return imported[0];
+    }
+
+    // Повторяющийся id или повреждённая запись посреди потока откатывают все уже загруженные задачи.
+    private int importAll(ReadableByteChannel source) {
+        Set<Integer> touched = new HashSet<>();
+        List<TaskRecord> waiting = new ArrayList<>();
+        int[] imported = {0};
+        Consumer<TaskRecord> sink = record -> {
+            if (record.type() == TaskType.SUBTASK && !allEpics.containsKey(record.parentId())) {
+                waiting.add(record);
+                return;
+            }
+            importRecord(record, touched);
+            imported[0]++;
+        };
+
+        try {
+            BufferedInputStream input = new BufferedInputStream(Channels.newInputStream(source), 64 * 1024);
+            input.mark(BinarySnapshot.MAGIC.length);
+            if (Arrays.equals(input.readNBytes(BinarySnapshot.MAGIC.length), BinarySnapshot.MAGIC)) {
+                BinarySnapshot.read(input, sink);
+            } else {
+                input.reset();
+                CsvSnapshot.stream(new InputStreamReader(input, StandardCharsets.UTF_8), sink);
+            }
+        } catch (IOException e) {
+            throw new ManagerReadException("Ошибка при загрузке задач", e);
+        }
+
+        for (TaskRecord record : waiting) {
+            if (!allEpics.containsKey(record.parentId())) {
+                throw new ManagerReadException("Epic " + record.parentId() + " для Subtask " + record.id()
+                        + " не найден", null);
+            }
+            importRecord(record, touched);
+            imported[0]++;
+        }
+        // Subtask выгружаются в порядке обхода HashMap, поэтому порядок создания восстанавливается по id.
+        touched.stream().map(allEpics::get).forEach(epic -> {
+            List<Integer> subtaskIds = epic.getSubtasksId();
+            subtaskIds.sort(null);
+            epic.removeAllSubtask();
+            subtaskIds.forEach(epic::addSubtask);
+            updateEpicStatus(epic);
+            updateEpicStartTimeAndDuration(epic);
+        });
+        return imported[0];
+    }
+
+    private void importRecord(TaskRecord record, Set<Integer> touched) {
+        int id = record.id();
+        if (allTasks.containsKey(id) || allEpics.containsKey(id) || allSubtasks.containsKey(id)) {
+            throw new ManagerReadException("Задача с id " + id + " уже есть в менеджере", null);
+        }
+        if (id >= totalId) {
+            totalId = id + 1;
+        }
+
+        Task task = switch (record.type()) {
+            case TASK -> {
+                Task imported = new Task(id, record.name(), record.description(), record.status());
+                allTasks.put(id, imported);
+                taskIndex.add(id);
+                yield imported;
+            }
+            case EPIC -> {
+                Epic imported = new Epic(id, record.name(), record.description());
+                allEpics.put(id, imported);
+                epicIndex.add(id);
+                yield imported;
+            }
+            case SUBTASK -> {
+                Subtask imported = new Subtask(id, record.parentId(), record.name(), record.description(),
+                        record.status());
+                Epic parent = allEpics.get(record.parentId());
+                remember(parent);
+                parent.addSubtask(id);
+                allSubtasks.put(id, imported);
+                subtaskIndex.add(id);
+                touched.add(parent.getId());
+                yield imported;
+            }
+        };
+        if (record.type() != TaskType.EPIC && record.startTime() != null
+                && !isIntersection(record.startTime(), record.duration(), null)) {
+            task.setStartTime(record.startTime());
+            task.setDurationTime(record.duration());
+            schedule(task);
+        }
+    }
+
+    protected boolean isInBatch() {
+        return batch != null;
+    }
+
     public List<Task> getHistory() {
         return new ArrayList<>(inMemoryHistoryManager.getHistory());
     }
 
+    @Override
+    public TaskPage<Task> getTasksPage(PageCursor after, int limit) {
+        return page(allTasks, taskIndex.tailSet(after.id(), false), limit);
+    }
+
+    @Override
+    public TaskPage<Epic> getEpicsPage(PageCursor after, int limit) {
+        return page(allEpics, epicIndex.tailSet(after.id(), false), limit);
+    }
+
+    @Override
+    public TaskPage<Subtask> getSubtasksPage(PageCursor after, int limit) {
+        return page(allSubtasks, subtaskIndex.tailSet(after.id(), false), limit);
+    }
+
+    @Override
+    public TaskPage<Task> getPrioritizedPage(PageCursor after, int limit) {
+        if (after.startTime() == null) {
+            return page(tasksByPriority.iterator(), limit);
+        }
+        return page(tasksByPriority.tailSet(probe(after.startTime(), after.id()), false).iterator(), limit);
+    }
+
+    // Оба направления - неизменяемые представления tasksByPriority без копирования.
     public Set<Task> getTasksByPriority(boolean ascending) {
         if (ascending) {
-            return new TreeSet<>(tasksByPriority);
+            return Collections.unmodifiableNavigableSet(tasksByPriority);
         } else {
-            return tasksByPriority.descendingSet();
+            return Collections.unmodifiableNavigableSet(tasksByPriority.descendingSet());
         }
     }
 
+    // Задачи, начинающиеся в [from, to), как неизменяемое представление части tasksByPriority.
+    public NavigableSet<Task> getTasksBetween(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || to.isBefore(from)) {
+            throw new IllegalArgumentException("Некорректный интервал: " + from + " - " + to);
+        }
+        return Collections.unmodifiableNavigableSet(
+                tasksByPriority.subSet(probe(from, Integer.MIN_VALUE), true, probe(to, Integer.MIN_VALUE), false));
+    }
+
+    // Не больше limit первых задач, начинающихся строго после time.
+    public List<Task> getTasksStartingAfter(LocalDateTime time, int limit) {
+        if (time == null || limit < 0) {
+            throw new IllegalArgumentException("Нужны время и неотрицательный limit");
+        }
+        List<Task> tasks = new ArrayList<>(Math.min(limit, tasksByPriority.size()));
+        Iterator<Task> iterator = tasksByPriority.tailSet(probe(time, Integer.MAX_VALUE), false).iterator();
+        while (tasks.size() < limit && iterator.hasNext()) {
+            tasks.add(iterator.next());
+        }
+        return Collections.unmodifiableList(tasks);
+    }
+
+    // Ближайший свободный слот длительностью length, начинающийся не раньше notBefore.
+    public TimeSlot findFreeSlot(LocalDateTime notBefore, Duration length) {
+        return findFreeSlots(notBefore, length, 1).get(0);
+    }
+
+    // Первые count свободных промежутков не раньше notBefore, по слоту в начале каждого. Обход tasksByPriority
+    // начинается у notBefore и останавливается на последнем найденном промежутке. Задачи, касающиеся
+    // границами, пересекаются, поэтому слот после задачи начинается через SLOT_GAP после её конца.
+    // Время после последней задачи свободно без ограничений: недостающие слоты идут в нём подряд.
+    public List<TimeSlot> findFreeSlots(LocalDateTime notBefore, Duration length, int count) {
+        if (notBefore == null || length == null || length.isNegative() || count <= 0) {
+            throw new IllegalArgumentException("Нужны начало поиска, неотрицательная длительность и count > 0");
+        }
+        Task probe = probe(notBefore, Integer.MIN_VALUE);
+
+        LocalDateTime candidate = notBefore;
+        Task before = tasksByPriority.lower(probe);
+        if (before != null && !before.getEndTime().isBefore(candidate)) {
+            candidate = before.getEndTime().plus(SLOT_GAP);
+        }
+
+        List<TimeSlot> slots = new ArrayList<>(count);
+        for (Task next : tasksByPriority.tailSet(probe, true)) {
+            if (candidate.plus(length).isBefore(next.getStartTime())) {
+                slots.add(new TimeSlot(candidate, length));
+                if (slots.size() == count) {
+                    return slots;
+                }
+            }
+            if (!next.getEndTime().isBefore(candidate)) {
+                candidate = next.getEndTime().plus(SLOT_GAP);
+            }
+        }
+        while (slots.size() < count) {
+            slots.add(new TimeSlot(candidate, length));
+            candidate = candidate.plus(length).plus(SLOT_GAP);
+        }
+        return slots;
+    }
+
+    @Override
     public void setStartTimeAndDuration(Task task, LocalDateTime localDateTime, Duration duration) {
-        if (isIntersection(localDateTime, duration)) {
+        if (isIntersection(localDateTime, duration, task)) {
             return;
         }
+        remember(task);
 
         if (task.getStartTime() != null) {
-            tasksByPriority.remove(task);
+            unschedule(task);
         }
 
         switch (task) {
@@ -229,7 +525,7 @@ public class InMemoryTaskManager implements TaskManager {
                 subtask.setDurationTime(duration);
                 subtask.setStartTime(localDateTime);
                 updateEpicStartTimeAndDuration(allEpics.get(subtask.getParentId()));
-                tasksByPriority.add(subtask);
+                schedule(subtask);
             }
             case Epic ignored -> {
                 // Обновление Epic происходит автоматически
@@ -237,13 +533,112 @@ public class InMemoryTaskManager implements TaskManager {
             default -> {
                 task.setDurationTime(duration);
                 task.setStartTime(localDateTime);
-                tasksByPriority.add(task);
+                schedule(task);
+            }
+        }
+    }
+
+    // Слоты сортируются по началу и сверяются с расписанием одним проходом: указатель по tasksByPriority
+    // только движется вперёд, поэтому пачка из m задач стоит O(m log m + n) вместо m вызовов
+    // setStartTimeAndDuration. Прежние слоты переносимых задач считаются занятыми для остальных задач пачки,
+    // поэтому обмен слотами двух задач отклоняется. Из пересекающихся слотов пачки назначается более ранний.
+    // Принятые слоты применяются вместе, как один пакет.
+    @Override
+    public Map<Task, ScheduleOutcome> scheduleAll(Map<Task, TimeSlot> slots) {
+        if (slots == null) {
+            throw new IllegalArgumentException("Слоты не могут быть null");
+        }
+        Map<Task, ScheduleOutcome> report = new LinkedHashMap<>();
+        List<ScheduleCandidate> candidates = new ArrayList<>(slots.size());
+        slots.forEach((task, slot) -> {
+            if (slot == null) {
+                throw new IllegalArgumentException("Задаче " + task.getId() + " не передан слот");
+            }
+            report.put(task, ScheduleOutcome.NOT_SCHEDULABLE);
+            if (allTasks.get(task.getId()) == task || allSubtasks.get(task.getId()) == task) {
+                candidates.add(new ScheduleCandidate(task, slot.start(),
+                        Duration.ofMinutes(slot.duration().toMinutes())));
+            }
+        });
+        if (candidates.isEmpty()) {
+            return Collections.unmodifiableMap(report);
+        }
+        candidates.sort(Comparator.comparing(ScheduleCandidate::start)
+                .thenComparing(candidate -> candidate.task().getId()));
+
+        Task first = tasksByPriority.lower(probe(candidates.get(0).start(), Integer.MIN_VALUE));
+        Iterator<Task> board = (first == null ? tasksByPriority : tasksByPriority.tailSet(first, true)).iterator();
+        Task current = board.hasNext() ? board.next() : null;
+        LocalDateTime acceptedEnd = null;
+        List<ScheduleCandidate> accepted = new ArrayList<>();
+        for (ScheduleCandidate candidate : candidates) {
+            LocalDateTime end = candidate.end();
+            while (current != null && current.getEndTime().isBefore(candidate.start())) {
+                current = board.hasNext() ? board.next() : null;
+            }
+            Task hit = current == candidate.task() ? tasksByPriority.higher(current) : current;
+            if (hit != null && !hit.getStartTime().isAfter(end)) {
+                report.put(candidate.task(), ScheduleOutcome.BOARD_CONFLICT);
+            } else if (acceptedEnd != null && !candidate.start().isAfter(acceptedEnd)) {
+                report.put(candidate.task(), ScheduleOutcome.BATCH_CONFLICT);
+            } else {
+                report.put(candidate.task(), ScheduleOutcome.ACCEPTED);
+                accepted.add(candidate);
+                acceptedEnd = end;
+            }
+        }
+
+        if (!accepted.isEmpty()) {
+            inBatch(manager -> applySlots(accepted));
+        }
+        return Collections.unmodifiableMap(report);
+    }
+
+    // Проход по задачам в порядке начала с кучей ещё не закончившихся задач: из кучи уходят задачи, закончившиеся
+    // до начала текущей, а оставшиеся пересекаются с ней. Стоимость O(n log n + k) для k пересечений.
+    // Задачи берутся из allTasks и allSubtasks, а не из tasksByPriority: проверяются и времена, изменённые
+    // в обход менеджера.
+    @Override
+    public List<TaskConflict> findAllConflicts() {
+        List<Task> scheduled = new ArrayList<>();
+        allTasks.values().stream().filter(task -> task.getStartTime() != null).forEach(scheduled::add);
+        allSubtasks.values().stream().filter(subtask -> subtask.getStartTime() != null).forEach(scheduled::add);
+        scheduled.sort(tasksByPriority.comparator());
+
+        List<TaskConflict> conflicts = new ArrayList<>();
+        PriorityQueue<ActiveTask> active = new PriorityQueue<>(Comparator.comparing(ActiveTask::end));
+        for (Task task : scheduled) {
+            while (!active.isEmpty() && active.peek().end().isBefore(task.getStartTime())) {
+                active.poll();
             }
+            active.forEach(earlier -> conflicts.add(new TaskConflict(earlier.task(), task)));
+            active.add(new ActiveTask(task, task.getEndTime()));
         }
+        return conflicts;
+    }
+
+    // Сначала все задачи снимаются с прежних слотов, чтобы их новые слоты не встретили старые в tasksByPriority.
+    private void applySlots(List<ScheduleCandidate> accepted) {
+        accepted.forEach(candidate -> {
+            remember(candidate.task());
+            unschedule(candidate.task());
+        });
+        Set<Integer> epics = new HashSet<>();
+        for (ScheduleCandidate candidate : accepted) {
+            Task task = candidate.task();
+            task.setDurationTime(candidate.duration());
+            task.setStartTime(candidate.start());
+            schedule(task);
+            if (task instanceof Subtask subtask) {
+                epics.add(subtask.getParentId());
+            }
+        }
+        epics.forEach(epicId -> updateEpicStartTimeAndDuration(allEpics.get(epicId)));
     }
 
     // Метод для автоматического обновления статуса Epic в течении кода.
     protected void updateEpicStatus(Epic epic) {
+        remember(epic);
         if (epic.getSubtasksId().isEmpty()) {
             epic.setStatus(Status.NEW);
             return;
@@ -260,18 +655,79 @@ public class InMemoryTaskManager implements TaskManager {
         epic.setStatus(allNew ? Status.NEW : (allDone ? Status.DONE : Status.IN_PROGRESS));
     }
 
-    // Приватный метод для определения пересечения.
-    private boolean isIntersection(LocalDateTime startTime, Duration duration) {
-        if (tasksByPriority.isEmpty()) {
+    // Не больше limit задач с позиции iterator; курсор следующей страницы - последняя выданная задача.
+    // Страница по индексу id: задачи берутся из HashMap по очереди, только для id этой страницы.
+    private static <T extends Task> TaskPage<T> page(Map<Integer, T> tasks, Set<Integer> ids, int limit) {
+        return page(ids.stream().map(tasks::get).iterator(), limit);
+    }
+
+    private static <T extends Task> TaskPage<T> page(Iterator<T> iterator, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Размер страницы должен быть положительным: " + limit);
+        }
+        List<T> items = new ArrayList<>(Math.min(limit, 1024));
+        while (items.size() < limit && iterator.hasNext()) {
+            items.add(iterator.next());
+        }
+        PageCursor next = iterator.hasNext() ? PageCursor.after(items.get(items.size() - 1)) : null;
+        return new TaskPage<>(Collections.unmodifiableList(items), next);
+    }
+
+    // Задача-граница для поиска в tasksByPriority: при равном времени начала id определяет, с какой стороны
+    // от задач с этим временем она окажется.
+    private static Task probe(LocalDateTime startTime, int id) {
+        Task probe = new Task(id, "", "", Status.NEW);
+        probe.setStartTime(startTime);
+        return probe;
+    }
+
+    // Добавление задачи со временем в tasksByPriority и в сетку слотов.
+    protected void schedule(Task task) {
+        tasksByPriority.add(task);
+        if (slotGrid != null) {
+            slotGrid.mark(task.getStartTime(), task.getEndTime());
+        }
+    }
+
+    // Удаление задачи из tasksByPriority и из сетки. Крайние слоты задачи могут быть общими с соседними
+    // задачами, поэтому отметки соседей восстанавливаются.
+    protected void unschedule(Task task) {
+        if (task == null || !tasksByPriority.remove(task) || slotGrid == null) {
+            return;
+        }
+        slotGrid.clear(task.getStartTime(), task.getEndTime());
+        Task before = tasksByPriority.lower(task);
+        Task after = tasksByPriority.higher(task);
+        if (before != null) {
+            slotGrid.mark(before.getStartTime(), before.getEndTime());
+        }
+        if (after != null) {
+            slotGrid.mark(after.getStartTime(), after.getEndTime());
+        }
+    }
+
+    // Проверка пересечения за O(log n) по соседям в tasksByPriority. Задачи в нём не пересекаются, поэтому
+    // упорядочены и по началу, и по концу: достаточно сравнить ближайшую задачу, которая начинается раньше,
+    // и ближайшую, которая начинается не раньше startTime. Текущий слот самой задачи self не учитывается.
+    // Если сетка слотов включена и интервал в ней свободен, пересечения точно нет.
+    private boolean isIntersection(LocalDateTime startTime, Duration duration, Task self) {
+        LocalDateTime endTime = startTime.plus(duration);
+        if (slotGrid != null && slotGrid.covers(startTime, endTime) && slotGrid.isFree(startTime, endTime)) {
             return false;
         }
-        return tasksByPriority.stream()
-                .anyMatch((task) -> !startTime.isAfter(task.getEndTime()) &&
-                        !startTime.plus(duration).isBefore(task.getStartTime()));
+        Task probe = probe(startTime, Integer.MIN_VALUE);
+        Task before = tasksByPriority.lower(probe);
+        Task after = tasksByPriority.ceiling(probe);
+        if (after != null && after == self) {
+            after = tasksByPriority.higher(self);
+        }
+        return (before != null && before != self && !startTime.isAfter(before.getEndTime()))
+                || (after != null && !endTime.isBefore(after.getStartTime()));
     }
 
-    // Приватный метод для автоматической работы со временем Epic
-    private void updateEpicStartTimeAndDuration(Epic epic) {
+    // Метод для автоматической работы со временем Epic
+    protected void updateEpicStartTimeAndDuration(Epic epic) {
+        remember(epic);
         if (epic.getSubtasksId().isEmpty()) {
             epic.setStartTime(null);
             epic.setEndTime(null);
@@ -301,5 +757,135 @@ public class InMemoryTaskManager implements TaskManager {
             epic.setDurationTime(Duration.ZERO);
         }
     }
-}
 
+    // Добавление загруженной задачи без проверок пересечений и пересчёта Epic.
+    // Порядок tasksByPriority и поля Epic вычисляются один раз в finishBulkLoad().
+    protected Task insertLoaded(Task task) {
+        int id = task.getId();
+        if (id >= totalId) {
+            totalId = id + 1;
+        }
+        switch (task) {
+            case Subtask subtask -> {
+                allEpics.get(subtask.getParentId()).addSubtask(id);
+                allSubtasks.put(id, subtask);
+                subtaskIndex.add(id);
+            }
+            case Epic epic -> {
+                allEpics.put(id, epic);
+                epicIndex.add(id);
+            }
+            default -> {
+                allTasks.put(id, task);
+                taskIndex.add(id);
+            }
+        }
+        return task;
+    }
+
+    // Завершение загрузки за O(n log n): задачи со временем сортируются один раз, пересечения проверяются
+    // одним проходом (в отсортированном ряду достаточно сравнить начало с концом последней принятой задачи),
+    // затем статус и время каждого Epic вычисляются один раз. Пересекающаяся задача не попадает в tasksByPriority,
+    // но сохраняет время из файла, чтобы findAllConflicts сообщил о пересечении, а следующее сохранение его не стёрло.
+    protected void finishBulkLoad() {
+        List<Task> scheduled = new ArrayList<>();
+        allTasks.values().stream().filter(task -> task.getStartTime() != null).forEach(scheduled::add);
+        allSubtasks.values().stream().filter(subtask -> subtask.getStartTime() != null).forEach(scheduled::add);
+        scheduled.sort(tasksByPriority.comparator());
+
+        LocalDateTime lastEnd = null;
+        for (Task task : scheduled) {
+            if (lastEnd != null && !task.getStartTime().isAfter(lastEnd)) {
+                continue;
+            }
+            schedule(task);
+            lastEnd = task.getEndTime();
+        }
+
+        // Порядок записей в снимке зависит от обхода HashMap и от шардов, а id выдаются по возрастанию,
+        // поэтому порядок создания Subtask восстанавливается сортировкой.
+        allEpics.values().forEach(epic -> {
+            List<Integer> subtaskIds = epic.getSubtasksId();
+            subtaskIds.sort(null);
+            epic.removeAllSubtask();
+            subtaskIds.forEach(epic::addSubtask);
+            updateEpicStatus(epic);
+            updateEpicStartTimeAndDuration(epic);
+        });
+    }
+
+    // Сохранение полей задачи перед первым изменением внутри пакета.
+    private void remember(Task task) {
+        if (batch != null) {
+            batch.touched().computeIfAbsent(task.getId(), id -> TaskState.of(task));
+        }
+    }
+
+    private void rollback(BatchSnapshot snapshot) {
+        snapshot.touched().values().forEach(TaskState::restore);
+
+        allTasks.clear();
+        taskIndex.clear();
+        allTasks.putAll(snapshot.tasks());
+        taskIndex.addAll(snapshot.tasks().keySet());
+        allEpics.clear();
+        epicIndex.clear();
+        allEpics.putAll(snapshot.epics());
+        epicIndex.addAll(snapshot.epics().keySet());
+        allSubtasks.clear();
+        subtaskIndex.clear();
+        allSubtasks.putAll(snapshot.subtasks());
+        subtaskIndex.addAll(snapshot.subtasks().keySet());
+        tasksByPriority.clear();
+        tasksByPriority.addAll(snapshot.tasksByPriority());
+        if (slotGrid != null) {
+            slotGrid.clearAll();
+            tasksByPriority.forEach(task -> slotGrid.mark(task.getStartTime(), task.getEndTime()));
+        }
+
+        inMemoryHistoryManager.getHistory().forEach(task -> inMemoryHistoryManager.remove(task.getId()));
+        snapshot.history().forEach(inMemoryHistoryManager::add);
+    }
+
+    private record ActiveTask(Task task, LocalDateTime end) {
+    }
+
+    private record ScheduleCandidate(Task task, LocalDateTime start, Duration duration) {
+
+        LocalDateTime end() {
+            return start.plus(duration);
+        }
+    }
+
+    private record BatchSnapshot(Map<Integer, Task> tasks, Map<Integer, Epic> epics, Map<Integer, Subtask> subtasks,
+                                 TreeSet<Task> tasksByPriority, List<Task> history,
+                                 Map<Integer, TaskState> touched) {
+    }
+
+    // Значения полей задачи, которые восстанавливаются в тот же объект при откате пакета.
+    private record TaskState(Task task, String name, String description, Status status, LocalDateTime startTime,
+                             Duration duration, LocalDateTime endTime, List<Integer> subtasksId) {
+
+        static TaskState of(Task task) {
+            if (task instanceof Epic epic) {
+                return new TaskState(epic, epic.getName(), epic.getDescription(), epic.getStatus(),
+                        epic.getStartTime(), epic.getDurationTime(), epic.getEndTime(), epic.getSubtasksId());
+            }
+            return new TaskState(task, task.getName(), task.getDescription(), task.getStatus(),
+                    task.getStartTime(), task.getDurationTime(), null, null);
+        }
+
+        void restore() {
+            task.setName(name);
+            task.setDescription(description);
+            task.setStatus(status);
+            task.setStartTime(startTime);
+            task.setDurationTime(duration);
+            if (task instanceof Epic epic) {
+                epic.setEndTime(endTime);
+                epic.removeAllSubtask();
+                subtasksId.forEach(epic::addSubtask);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package manager;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Сегмент журнала из записей в кадрах.
+// Сегмент: MAGIC, версия (1 байт), затем кадры: длина записи (int), CRC32C записи (int), запись журнала в UTF-8.
+// Кадр, оборванный сбоем посреди дописывания, не проходит проверку длины или контрольной суммы,
+// и при загрузке последний сегмент обрезается по первому такому кадру. В закрытых сегментах дописывания
+// уже не было, поэтому повреждённый кадр в них - порча данных, а не оборванный хвост.
+final class JournalFrames {
+    static final byte[] MAGIC = {'K', 'N', 'J', 'R'};
+    private static final byte VERSION = 1;
+    private static final int HEADER = MAGIC.length + 1;
+    private static final int FRAME_HEADER = 8;
+
+    private JournalFrames() {
+    }
+
+    // Сегмент в прежнем текстовом формате начинается с названия операции, а не с MAGIC.
+    // Первого байта достаточно, чтобы распознать и сегмент с оборванным заголовком.
+    static boolean isFramed(File segment) throws IOException {
+        try (InputStream input = new FileInputStream(segment)) {
+            return input.read() == MAGIC[0];
+        }
+    }
+
+    // Кадры для дописывания в сегмент; withHeader - сегмент ещё пуст и начинается с этих кадров.
+    static byte[] encode(List<String> records, boolean withHeader) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 128 + HEADER);
+        DataOutputStream output = new DataOutputStream(bytes);
+        CRC32C crc = new CRC32C();
+        try {
+            if (withHeader) {
+                output.write(MAGIC);
+                output.writeByte(VERSION);
+            }
+            for (String record : records) {
+                byte[] payload = record.getBytes(StandardCharsets.UTF_8);
+                crc.reset();
+                crc.update(payload);
+                output.writeInt(payload.length);
+                output.writeInt((int) crc.getValue());
+                output.write(payload);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Один последовательный проход по сегменту: записи целых кадров передаются в sink. Последний сегмент
+    // (last) обрезается по первому повреждённому кадру, и всё после него отбрасывается; в остальных сегментах
+    // повреждённый кадр - ошибка, иначе следующие сегменты проигрывались бы без пропавших записей.
+    static RecoveryStats read(File segment, boolean last, Consumer<String> sink) throws IOException {
+        long size = segment.length();
+        long valid = 0;
+        int records = 0;
+
+        try (DataInputStream input = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(segment), 64 * 1024))) {
+            byte[] header = input.readNBytes(HEADER);
+            if (header.length == HEADER) {
+                if (!Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+                    throw new IOException("Повреждён заголовок сегмента журнала " + segment);
+                }
+                if (header[MAGIC.length] != VERSION) {
+                    throw new IOException("Неподдерживаемая версия сегмента журнала: " + header[MAGIC.length]);
+                }
+                valid = HEADER;
+            }
+
+            CRC32C crc = new CRC32C();
+            byte[] payload = new byte[256];
+            while (valid > 0 && valid + FRAME_HEADER <= size) {
+                int length = input.readInt();
+                int checksum = input.readInt();
+                if (length < 0 || valid + FRAME_HEADER + length > size) {
+                    break;
+                }
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                input.readFully(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                sink.accept(new String(payload, 0, length, StandardCharsets.UTF_8));
+                records++;
+                valid += FRAME_HEADER + length;
+            }
+        }
+
+        if (valid < size && !last) {
+            throw new IOException("Повреждён закрытый сегмент журнала " + segment + " по смещению " + valid);
+        }
+        if (valid < size) {
+            try (FileChannel channel = FileChannel.open(segment.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return new RecoveryStats(records, size - valid);
+    }
+}
@@ -1,11 +1,52 @@
 package manager;
 
+import java.io.File;
+import java.util.Locale;
+import java.util.Properties;
+
 public final class Managers {
     public static InMemoryTaskManager getDefault() {
         return new InMemoryTaskManager();
     }
 
+    // Менеджер с хранением выбранного типа; задачи из файла загружаются сразу.
+    public static InMemoryTaskManager getDefault(StoreType type, File file) {
+        return switch (type) {
+            case NONE -> getDefault();
+            case CSV -> getFileBacked(file, StorageOptions.defaults());
+            case LOG -> getFileBacked(file, StorageOptions.defaults().withMode(PersistenceMode.JOURNAL));
+            case MAPPED -> getFileBacked(file, StorageOptions.defaults().withFormat(SnapshotFormat.PAGED));
+        };
+    }
+
+    // Менеджер по настройкам: store - тип хранения (none, csv, log или mapped), file - путь к файлу.
+    public static InMemoryTaskManager getDefault(Properties config) {
+        StoreType type = StoreType.valueOf(config.getProperty("store", "none").toUpperCase(Locale.ROOT));
+        if (type == StoreType.NONE) {
+            return getDefault();
+        }
+        String path = config.getProperty("file");
+        if (path == null) {
+            throw new IllegalArgumentException("Для хранилища " + type + " не указан файл");
+        }
+        return getDefault(type, new File(path));
+    }
+
     public static InMemoryHistoryManager getDefaultHistory() {
         return new InMemoryHistoryManager();
     }
-}
\ No newline at end of file
+
+    // Менеджер, загруженный из файла, с синхронной записью каждого изменения.
+    public static FileBackedTaskManager getFileBacked(File file) {
+        return FileBackedTaskManager.loadFromFile(file);
+    }
+
+    // Менеджер, загруженный из файла, с выбранной политикой записи: sync, interval или count.
+    public static FileBackedTaskManager getFileBacked(File file, FlushPolicy flushPolicy) {
+        return getFileBacked(file, StorageOptions.defaults().withFlushPolicy(flushPolicy));
+    }
+
+    public static FileBackedTaskManager getFileBacked(File file, StorageOptions options) {
+        return FileBackedTaskManager.loadFromFile(file, options);
+    }
+}
@@ -0,0 +1,23 @@
+package manager;
+
+import model.Task;
+
+import java.time.LocalDateTime;
+
+// Позиция, после которой начинается следующая страница: id последней выданной задачи и, для страниц
+// по приоритету, её время начала. Курсор не ссылается на саму задачу, поэтому остаётся корректным, даже если
+// задачу удалили или перенесли.
+public record PageCursor(LocalDateTime startTime, int id) {
+
+    public static PageCursor first() {
+        return new PageCursor(null, Integer.MIN_VALUE);
+    }
+
+    public static PageCursor afterId(int id) {
+        return new PageCursor(null, id);
+    }
+
+    public static PageCursor after(Task task) {
+        return new PageCursor(task.getStartTime(), task.getId());
+    }
+}
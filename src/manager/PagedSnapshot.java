@@ -0,0 +1,296 @@
+package manager;
+
+import model.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// Страничный формат снимка с обновлением отдельных записей без переписывания файла.
+// Файл: MAGIC, версия (1 байт), заголовок дополнен нулями до SLOT_ALIGN, затем слоты до конца файла.
+// Слот: размер слота (int, кратен SLOT_ALIGN), состояние (byte), номер версии (long), длина записи (int),
+// CRC32C номера версии, длины и записи (int), запись в формате BinarySnapshot и нули до конца слота.
+// Слот не пересекает границу страницы PAGE_SIZE, если помещается в одну страницу, поэтому запись задачи
+// затрагивает одну страницу файла.
+// Единственная копия записи никогда не перезаписывается: новая версия пишется в другой слот, сбрасывается
+// на диск, и только после этого старый слот помечается состоянием FREE. При чтении для каждого id
+// побеждает целый слот с большим номером версии.
+// Оборванные сбоем слоты в конце файла (короткие или с неверной контрольной суммой) считаются свободным
+// местом и отрезаются при следующем обновлении. Повреждённый слот в середине файла допустим, только если
+// у задачи есть целый слот с другой версией, иначе загрузка завершается ошибкой.
+// Файлы версии 1 без контрольных сумм читаются, но при следующем сохранении переписываются целиком.
+final class PagedSnapshot {
+    static final byte[] MAGIC = {'K', 'N', 'P', 'G'};
+    private static final byte VERSION = 2;
+    private static final byte UNCHECKED_VERSION = 1;
+    static final int PAGE_SIZE = 4096;
+    private static final int SLOT_ALIGN = 64;
+    private static final int SLOT_HEADER = 21;
+    private static final int UNCHECKED_SLOT_HEADER = 17;
+    private static final byte FREE = 0;
+    private static final byte LIVE = 1;
+
+    // Расположение записей по id и свободные слоты по размеру.
+    private final Map<Integer, Slot> slots = new HashMap<>();
+    private final TreeMap<Integer, ArrayDeque<Long>> free = new TreeMap<>();
+    private long end = SLOT_ALIGN;
+    private long freeBytes = 0;
+    private long version = 0;
+
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+    private final DataOutputStream payloadOutput = new DataOutputStream(payload);
+    private final CRC32C crc = new CRC32C();
+
+    // Снимок прочитан из файла версии 1, в который нельзя дописывать слоты новой версии.
+    private boolean unchecked = false;
+
+    private PagedSnapshot() {
+    }
+
+    static boolean isPaged(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] header = input.readNBytes(MAGIC.length);
+            return Arrays.equals(header, MAGIC);
+        }
+    }
+
+    // Полная запись файла. Возвращает расположение записей для последующих обновлений отдельных записей.
+    static PagedSnapshot write(File target, Collection<Task> tasks, Collection<Epic> epics,
+                               Collection<Subtask> subtasks) throws IOException {
+        PagedSnapshot snapshot = new PagedSnapshot();
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(SLOT_ALIGN);
+            header.put(MAGIC).put(VERSION).rewind();
+            writeFully(channel, header, 0);
+
+            for (Collection<? extends Task> group : List.of(tasks, epics, subtasks)) {
+                for (Task task : group) {
+                    snapshot.put(channel, task, null);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    // Чтение через отображение файла в память. Task и Epic передаются в sink раньше Subtask,
+    // так как после переездов записей порядок слотов в файле произвольный.
+    static PagedSnapshot read(File source, Consumer<TaskRecord> sink) throws IOException {
+        PagedSnapshot snapshot = new PagedSnapshot();
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.position(MAGIC.length);
+            byte fileVersion = buffer.get();
+            if (fileVersion != VERSION && fileVersion != UNCHECKED_VERSION) {
+                throw new IOException("Неподдерживаемая версия страничного снимка: " + fileVersion);
+            }
+            snapshot.unchecked = fileVersion == UNCHECKED_VERSION;
+            int header = snapshot.unchecked ? UNCHECKED_SLOT_HEADER : SLOT_HEADER;
+
+            Map<Integer, Long> versions = new HashMap<>();
+            List<TornSlot> torn = new ArrayList<>();
+            long offset = SLOT_ALIGN;
+            while (offset < size) {
+                // Заголовок слота пишется первым, поэтому негодный размер бывает только у оборванного хвоста.
+                int capacity = size - offset >= SLOT_HEADER ? buffer.getInt((int) offset) : 0;
+                if (capacity < SLOT_ALIGN || capacity % SLOT_ALIGN != 0 || offset + capacity > size) {
+                    break;
+                }
+                long slotVersion = buffer.getLong((int) offset + 5);
+                Slot slot = new Slot(offset, capacity);
+
+                if (buffer.get((int) offset + 4) == LIVE) {
+                    int id = buffer.getInt((int) offset + header);
+                    Slot previous = snapshot.slots.get(id);
+                    if (!snapshot.unchecked && !snapshot.isIntact(buffer, offset, capacity)) {
+                        torn.add(new TornSlot(id, slot));
+                    } else if (previous == null || versions.get(id) < slotVersion) {
+                        snapshot.version = Math.max(snapshot.version, slotVersion);
+                        snapshot.slots.put(id, slot);
+                        versions.put(id, slotVersion);
+                        if (previous != null) {
+                            snapshot.addFree(previous);
+                        }
+                    } else {
+                        snapshot.addFree(slot);
+                    }
+                } else {
+                    snapshot.addFree(slot);
+                }
+                offset += capacity;
+            }
+
+            long tail = offset;
+            for (int i = torn.size() - 1; i >= 0 && torn.get(i).slot().end() == tail; i--) {
+                tail = torn.remove(i).slot().offset();
+            }
+            for (TornSlot slot : torn) {
+                if (!snapshot.slots.containsKey(slot.id())) {
+                    throw new IOException("Повреждён слот страничного снимка по смещению " + slot.slot().offset()
+                            + ": контрольная сумма не совпадает, целой версии записи нет");
+                }
+                snapshot.addFree(slot.slot());
+            }
+            snapshot.end = tail;
+
+            byte[] scratch = new byte[256];
+            List<TaskRecord> subtasks = new ArrayList<>();
+            for (Slot slot : snapshot.slots.values()) {
+                buffer.position((int) slot.offset() + header);
+                TaskRecord record;
+                try {
+                    record = BinarySnapshot.readRecord(buffer, scratch);
+                } catch (RuntimeException e) {
+                    throw new IOException("Повреждена запись страничного снимка по смещению " + slot.offset(), e);
+                }
+                if (record.type() == TaskType.SUBTASK) {
+                    subtasks.add(record);
+                } else {
+                    sink.accept(record);
+                }
+            }
+            subtasks.forEach(sink);
+        }
+        return snapshot;
+    }
+
+    // Снимок можно обновлять по записям: файл версии 1 сначала переписывается целиком.
+    boolean isUpdatable() {
+        return !unchecked;
+    }
+
+    // Запись изменённых задач и освобождение слотов удалённых (значение null). Новые версии пишутся
+    // в свободные слоты или в конец файла; прежние слоты освобождаются только после сброса новых на диск.
+    void update(File target, Map<Integer, Task> changes, boolean force) throws IOException {
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE)) {
+            if (channel.size() > end) {
+                channel.truncate(end);
+            }
+            List<Slot> replaced = new ArrayList<>();
+            boolean written = false;
+            for (Map.Entry<Integer, Task> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    Slot slot = slots.remove(change.getKey());
+                    if (slot != null) {
+                        replaced.add(slot);
+                    }
+                } else {
+                    put(channel, change.getValue(), replaced);
+                    written = true;
+                }
+            }
+            if (written && !replaced.isEmpty()) {
+                channel.force(false);
+            }
+            for (Slot slot : replaced) {
+                release(channel, slot);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        }
+    }
+
+    // Освобождённое место забирается лениво: когда свободные слоты занимают больше половины файла,
+    // файл стоит переписать целиком.
+    boolean needsCompaction() {
+        return end > PAGE_SIZE && freeBytes * 2 > end;
+    }
+
+    // Запись новой версии в другой слот; прежний слот добавляется в replaced и освобождается вызывающим.
+    private void put(FileChannel channel, Task task, List<Slot> replaced) throws IOException {
+        payload.reset();
+        BinarySnapshot.writeRecord(payloadOutput, task);
+        Slot slot = allocate(channel, align(SLOT_HEADER + payload.size()));
+        writeSlot(channel, slot, ++version);
+        Slot current = slots.put(task.getId(), slot);
+        if (current != null) {
+            replaced.add(current);
+        }
+    }
+
+    private void writeSlot(FileChannel channel, Slot slot, long slotVersion) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(slot.capacity());
+        buffer.putInt(slot.capacity()).put(LIVE).putLong(slotVersion).putInt(payload.size()).putInt(0);
+        buffer.put(payload.toByteArray());
+        crc.reset();
+        crc.update(buffer.array(), 5, 12);
+        crc.update(buffer.array(), SLOT_HEADER, payload.size());
+        buffer.putInt(17, (int) crc.getValue()).rewind();
+        writeFully(channel, buffer, slot.offset());
+    }
+
+    // Проверка контрольной суммы слота; длина записи проверяется раньше, чтобы не читать за пределами слота.
+    private boolean isIntact(ByteBuffer buffer, long offset, int capacity) {
+        int length = buffer.getInt((int) offset + 13);
+        if (length < 0 || length > capacity - SLOT_HEADER) {
+            return false;
+        }
+        crc.reset();
+        crc.update(buffer.slice((int) offset + 5, 12));
+        crc.update(buffer.slice((int) offset + SLOT_HEADER, length));
+        return (int) crc.getValue() == buffer.getInt((int) offset + 17);
+    }
+
+    // Подходящий по размеру свободный слот либо новый слот в конце файла. Хвост страницы, в который
+    // слот не помещается, становится свободным слотом.
+    private Slot allocate(FileChannel channel, int capacity) throws IOException {
+        Map.Entry<Integer, ArrayDeque<Long>> fit = free.ceilingEntry(capacity);
+        if (fit != null) {
+            long offset = fit.getValue().removeFirst();
+            if (fit.getValue().isEmpty()) {
+                free.remove(fit.getKey());
+            }
+            freeBytes -= fit.getKey();
+            return new Slot(offset, fit.getKey());
+        }
+
+        long pageLeft = PAGE_SIZE - end % PAGE_SIZE;
+        if (capacity > pageLeft && pageLeft < PAGE_SIZE) {
+            Slot padding = new Slot(end, (int) pageLeft);
+            release(channel, padding);
+            end += pageLeft;
+        }
+        Slot slot = new Slot(end, capacity);
+        end += capacity;
+        return slot;
+    }
+
+    // Надгробие: слот помечается свободным перезаписью его заголовка, содержимое не трогается.
+    private void release(FileChannel channel, Slot slot) throws IOException {
+        ByteBuffer tombstone = ByteBuffer.allocate(5);
+        tombstone.putInt(slot.capacity()).put(FREE).rewind();
+        writeFully(channel, tombstone, slot.offset());
+        addFree(slot);
+    }
+
+    private void addFree(Slot slot) {
+        free.computeIfAbsent(slot.capacity(), capacity -> new ArrayDeque<>()).add(slot.offset());
+        freeBytes += slot.capacity();
+    }
+
+    private static int align(int size) {
+        return (size + SLOT_ALIGN - 1) / SLOT_ALIGN * SLOT_ALIGN;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private record Slot(long offset, int capacity) {
+        long end() {
+            return offset + capacity;
+        }
+    }
+
+    private record TornSlot(int id, Slot slot) {
+    }
+}
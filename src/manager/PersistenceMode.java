@@ -0,0 +1,9 @@
+package manager;
+
+// Режим сохранения FileBackedTaskManager.
+public enum PersistenceMode {
+    // Каждое изменение полностью перезаписывает файл.
+    SNAPSHOT,
+    // Каждое изменение дописывает одну запись в журнал поверх последнего снимка.
+    JOURNAL
+}
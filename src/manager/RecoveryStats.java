@@ -0,0 +1,10 @@
+package manager;
+
+// Результат проигрывания журнала при загрузке: количество восстановленных записей и объём оборванного хвоста,
+// отброшенного при обрезке сегментов.
+public record RecoveryStats(int recoveredRecords, long discardedBytes) {
+
+    public boolean isTruncated() {
+        return discardedBytes > 0;
+    }
+}
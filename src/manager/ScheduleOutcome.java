@@ -0,0 +1,13 @@
+package manager;
+
+// Результат планирования одной задачи в scheduleAll.
+public enum ScheduleOutcome {
+    // Слот назначен.
+    ACCEPTED,
+    // Слот пересекается с задачей, уже стоящей в расписании.
+    BOARD_CONFLICT,
+    // Слот пересекается с более ранним слотом той же пачки, который был назначен.
+    BATCH_CONFLICT,
+    // Epic или задача другого менеджера: время Epic вычисляется по его Subtask.
+    NOT_SCHEDULABLE
+}
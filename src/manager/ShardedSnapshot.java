@@ -0,0 +1,65 @@
+package manager;
+
+import model.TaskType;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Locale;
+
+// Снимок, разложенный по файлам-шардам: отдельно Task, Epic и Subtask, внутри типа - по id % shards.
+// Основной файл хранит только манифест: MAGIC, версия (1 байт), количество шардов на тип (int) и поколение
+// (long). Шард - обычный снимок в формате CSV или BINARY с именем <файл>.<поколение>.<тип>.<номер>.
+// Полная перезапись пишет шарды нового поколения рядом со старыми и переключается на них заменой манифеста,
+// поэтому после сбоя манифест никогда не смешивает шарды разных поколений. Манифест версии 1 без поколения
+// ссылается на шарды <файл>.<тип>.<номер>, то есть на поколение 0.
+final class ShardedSnapshot {
+    static final byte[] MAGIC = {'K', 'N', 'S', 'H'};
+    private static final byte VERSION = 2;
+    private static final byte UNGENERATIONAL_VERSION = 1;
+
+    private ShardedSnapshot() {
+    }
+
+    static boolean isSharded(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] header = input.readNBytes(MAGIC.length);
+            return Arrays.equals(header, MAGIC);
+        }
+    }
+
+    static Manifest readManifest(File manifest) throws IOException {
+        try (DataInputStream input = new DataInputStream(new FileInputStream(manifest))) {
+            input.skipNBytes(MAGIC.length);
+            byte version = input.readByte();
+            if (version == UNGENERATIONAL_VERSION) {
+                return new Manifest(input.readInt(), 0);
+            }
+            if (version != VERSION) {
+                throw new IOException("Неподдерживаемая версия манифеста шардов: " + version);
+            }
+            return new Manifest(input.readInt(), input.readLong());
+        }
+    }
+
+    static void writeManifest(File target, Manifest manifest) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(target))) {
+            output.write(MAGIC);
+            output.writeByte(VERSION);
+            output.writeInt(manifest.shards());
+            output.writeLong(manifest.generation());
+        }
+    }
+
+    static File shardFile(File base, long generation, TaskType type, int shard) {
+        String prefix = generation == 0 ? base.getPath() : base.getPath() + "." + generation;
+        return new File(prefix + "." + type.name().toLowerCase(Locale.ROOT) + "." + shard);
+    }
+
+    static int shardOf(int id, int shards) {
+        return Math.floorMod(id, shards);
+    }
+
+    // Количество шардов на тип и поколение их файлов.
+    record Manifest(int shards, long generation) {
+    }
+}
@@ -0,0 +1,69 @@
+package manager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+
+// Сетка слотов фиксированной длительности от origin на horizon вперёд, по биту на слот.
+// Задача отмечает все слоты, которых касается её интервал, включая слот её конца, поэтому у пересекающихся
+// задач всегда есть общий отмеченный слот. Обратное верно только для задач, выровненных по сетке:
+// невыровненные задачи могут делить крайний слот, не пересекаясь.
+final class SlotGrid {
+    private final LocalDateTime origin;
+    private final long granularitySeconds;
+    private final int slots;
+    private final BitSet marked;
+
+    SlotGrid(LocalDateTime origin, Duration granularity, Duration horizon) {
+        if (origin == null || granularity == null || horizon == null) {
+            throw new IllegalArgumentException("Параметры сетки слотов не могут быть null");
+        }
+        if (granularity.toSeconds() <= 0 || horizon.compareTo(granularity) < 0) {
+            throw new IllegalArgumentException("Слот должен быть не короче секунды, а горизонт - не короче слота");
+        }
+        long count = horizon.toSeconds() / granularity.toSeconds();
+        if (count > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком много слотов в сетке: " + count);
+        }
+        this.origin = origin;
+        this.granularitySeconds = granularity.toSeconds();
+        this.slots = (int) count;
+        this.marked = new BitSet(slots);
+    }
+
+    // Интервал целиком внутри горизонта: только для него ответ сетки что-то значит.
+    boolean covers(LocalDateTime start, LocalDateTime end) {
+        return !start.isBefore(origin) && slotOf(end) < slots;
+    }
+
+    // Ни один слот интервала не отмечен, значит, пересечений нет. Проверка идёт по словам BitSet.
+    boolean isFree(LocalDateTime start, LocalDateTime end) {
+        int next = marked.nextSetBit((int) slotOf(start));
+        return next < 0 || next > slotOf(end);
+    }
+
+    // Отметка интервала; часть за пределами горизонта отбрасывается.
+    void mark(LocalDateTime start, LocalDateTime end) {
+        long from = Math.max(0, slotOf(start));
+        long to = Math.min(slots - 1L, slotOf(end));
+        if (from <= to) {
+            marked.set((int) from, (int) to + 1);
+        }
+    }
+
+    void clear(LocalDateTime start, LocalDateTime end) {
+        long from = Math.max(0, slotOf(start));
+        long to = Math.min(slots - 1L, slotOf(end));
+        if (from <= to) {
+            marked.clear((int) from, (int) to + 1);
+        }
+    }
+
+    void clearAll() {
+        marked.clear();
+    }
+
+    private long slotOf(LocalDateTime time) {
+        return Math.floorDiv(Duration.between(origin, time).toSeconds(), granularitySeconds);
+    }
+}
@@ -0,0 +1,77 @@
+package manager;
+
+import exceptions.ManagerReadException;
+import model.DescriptionStore;
+
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Описания задач, оставленные в двоичном снимке. Текст читается позиционным чтением FileChannel
+// при обращении, последние прочитанные тексты хранятся в LRU-кэше ограниченного размера.
+final class SnapshotDescriptions implements DescriptionStore, Closeable {
+    private final FileChannel channel;
+    private final Map<Long, String> cache;
+
+    SnapshotDescriptions(File file, int cacheSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @Override
+    public String load(long offset, int length) {
+        synchronized (cache) {
+            String cached = cache.get(offset);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        String description = new String(readBytes(offset, length), StandardCharsets.UTF_8);
+        synchronized (cache) {
+            cache.put(offset, description);
+        }
+        return description;
+    }
+
+    // Копирование текста в новый снимок без декодирования и без попадания в кэш.
+    void copyTo(DataOutput output, long offset, int length) throws IOException {
+        output.write(readBytes(offset, length));
+    }
+
+    int cachedCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private byte[] readBytes(long offset, int length) {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Описание выходит за конец файла снимка");
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerReadException("Ошибка при чтении описания задачи", e);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,11 @@
+package manager;
+
+// Формат файла снимка FileBackedTaskManager.
+public enum SnapshotFormat {
+    // Текстовый CSV, совместимый с прежними версиями.
+    CSV,
+    // Двоичный формат с заголовками фиксированной длины, читается через MappedByteBuffer.
+    BINARY,
+    // Страничный двоичный формат: изменённые задачи пишутся в отдельные слоты, а не весь файл.
+    PAGED
+}
@@ -0,0 +1,91 @@
+package manager;
+
+// Настройки хранения FileBackedTaskManager.
+// descriptionCacheSize - размер LRU-кэша описаний, читаемых из снимка по требованию; 0 - описания в памяти.
+// shards - количество файлов на каждый тип задач; 0 - все задачи в одном файле.
+public record StorageOptions(PersistenceMode mode, FlushPolicy flushPolicy, SnapshotFormat format,
+                             FsyncPolicy fsyncPolicy, boolean compressed, WriteQueue writeQueue,
+                             int descriptionCacheSize, int shards) {
+
+    public StorageOptions {
+        if (mode == null || flushPolicy == null || format == null || fsyncPolicy == null
+                || writeQueue == null) {
+            throw new IllegalArgumentException("Настройки хранения не могут содержать null");
+        }
+        if (compressed && format == SnapshotFormat.PAGED) {
+            throw new IllegalArgumentException("Страничный снимок обновляется по записям и не может быть сжат");
+        }
+        if (writeQueue.isEnabled() && !flushPolicy.isSync()) {
+            throw new IllegalArgumentException("Очередь записи и отложенная запись по FlushPolicy несовместимы");
+        }
+        if (descriptionCacheSize < 0) {
+            throw new IllegalArgumentException("Размер кэша описаний не может быть отрицательным");
+        }
+        if (descriptionCacheSize > 0 && (format != SnapshotFormat.BINARY || compressed)) {
+            throw new IllegalArgumentException("Описания читаются по требованию только из несжатого двоичного снимка");
+        }
+        if (shards < 0) {
+            throw new IllegalArgumentException("Количество шардов не может быть отрицательным");
+        }
+        if (shards > 0 && (format == SnapshotFormat.PAGED || descriptionCacheSize > 0)) {
+            throw new IllegalArgumentException("Шарды поддерживаются только для форматов CSV и BINARY");
+        }
+    }
+
+    public static StorageOptions defaults() {
+        return new StorageOptions(PersistenceMode.SNAPSHOT, FlushPolicy.sync(), SnapshotFormat.CSV,
+                FsyncPolicy.never(), false, WriteQueue.none(), 0, 0);
+    }
+
+    public StorageOptions withMode(PersistenceMode mode) {
+        return new StorageOptions(mode, flushPolicy, format, fsyncPolicy, compressed, writeQueue,
+                descriptionCacheSize, shards);
+    }
+
+    public StorageOptions withFlushPolicy(FlushPolicy flushPolicy) {
+        return new StorageOptions(mode, flushPolicy, format, fsyncPolicy, compressed, writeQueue,
+                descriptionCacheSize, shards);
+    }
+
+    public StorageOptions withFormat(SnapshotFormat format) {
+        return new StorageOptions(mode, flushPolicy, format, fsyncPolicy, compressed, writeQueue,
+                descriptionCacheSize, shards);
+    }
+
+    public StorageOptions withFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        return new StorageOptions(mode, flushPolicy, format, fsyncPolicy, compressed, writeQueue,
+                descriptionCacheSize, shards);
+    }
+
+    public StorageOptions withCompression(boolean compressed) {
+        return new StorageOptions(mode, flushPolicy, format, fsyncPolicy, compressed, writeQueue,
+                descriptionCacheSize, shards);
+    }
+
+    public StorageOptions withWriteQueue(WriteQueue writeQueue) {
+        return new StorageOptions(mode, flushPolicy, format, fsyncPolicy, compressed, writeQueue,
+                descriptionCacheSize, shards);
+    }
+
+    // Описания не держатся в памяти, а читаются из двоичного снимка при обращении; в памяти остаются
+    // последние cacheSize прочитанных.
+    public StorageOptions withLazyDescriptions(int cacheSize) {
+        return new StorageOptions(mode, flushPolicy, format, fsyncPolicy, compressed, writeQueue, cacheSize,
+                shards);
+    }
+
+    // Task, Epic и Subtask хранятся в отдельных файлах, каждый тип разбит на shards файлов по id.
+    // Изменение задачи переписывает только её шард.
+    public StorageOptions withShards(int shards) {
+        return new StorageOptions(mode, flushPolicy, format, fsyncPolicy, compressed, writeQueue,
+                descriptionCacheSize, shards);
+    }
+
+    public boolean isSharded() {
+        return shards > 0;
+    }
+
+    public boolean isLazyDescriptions() {
+        return descriptionCacheSize > 0;
+    }
+}
@@ -0,0 +1,13 @@
+package manager;
+
+// Способ хранения, который выбирает Managers. Файловые способы - настройки FileBackedTaskManager.
+public enum StoreType {
+    // Без сохранения.
+    NONE,
+    // CSV-снимок, переписываемый целиком после каждого изменения.
+    CSV,
+    // Журнал записей PUT и DELETE, который только дописывается и периодически сворачивается в снимок.
+    LOG,
+    // Страничный двоичный файл: чтение через отображение в память, изменённые записи дописываются в свободные слоты.
+    MAPPED
+}
@@ -0,0 +1,7 @@
+package manager;
+
+import model.Task;
+
+// Пара пересекающихся по времени задач; first начинается не позже second.
+public record TaskConflict(Task first, Task second) {
+}
@@ -0,0 +1,235 @@
+package manager;
+
+import model.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+// Кодек одной CSV-записи задачи.
+// Запись: id,type,name,status,description,epic,startTime,duration,endTime. Поля name и description
+// заключаются в кавычки по RFC 4180, если содержат запятую, кавычку или перевод строки; кавычка
+// не в начале поля читается как обычный символ.
+// Запись дописывается в переданный StringBuilder, а разбор идёт одним проходом по индексам строки,
+// поэтому на каждое поле не создаются промежуточные строки.
+final class TaskCsvCodec {
+    private static final String NONE = "None";
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("dd.MM.yyyy HH:mm:ss");
+    private static final int DATE_TIME_LENGTH = 19;
+
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final Status[] STATUSES = Status.values();
+
+    private TaskCsvCodec() {
+    }
+
+    static String format(Task task) {
+        StringBuilder out = new StringBuilder(64);
+        append(out, task);
+        return out.toString();
+    }
+
+    static void append(StringBuilder out, Task task) {
+        out.append(task.getId()).append(',').append(typeOf(task).name()).append(',');
+        appendText(out, task.getName());
+        out.append(',').append(task.getStatus().name()).append(',');
+        appendText(out, task.getDescription());
+        out.append(',');
+        if (task instanceof Subtask subtask) {
+            out.append(subtask.getParentId());
+        } else {
+            out.append(NONE);
+        }
+        out.append(',');
+        appendDateTime(out, task.getStartTime());
+        out.append(',').append(task.getDurationTime().toMinutes()).append(',');
+        appendDateTime(out, task.getEndTime());
+    }
+
+    static TaskType typeOf(Task task) {
+        return switch (task) {
+            case Subtask ignored -> TaskType.SUBTASK;
+            case Epic ignored -> TaskType.EPIC;
+            default -> TaskType.TASK;
+        };
+    }
+
+    static TaskRecord parse(String line) {
+        return parse(line, 0);
+    }
+
+    // Разбор записи, начинающейся с позиции from.
+    static TaskRecord parse(String line, int from) {
+        Cursor cursor = new Cursor(line, from);
+
+        int id = cursor.nextInt();
+        TaskType type = cursor.nextEnum(TYPES);
+        String name = cursor.nextText();
+        Status status = cursor.nextEnum(STATUSES);
+        String description = cursor.nextText();
+        int parentId = cursor.skipNone() ? 0 : cursor.nextInt();
+        LocalDateTime startTime = cursor.skipNone() ? null : cursor.nextDateTime();
+        Duration duration = cursor.skipNone() ? Duration.ZERO : Duration.ofMinutes(cursor.nextLong());
+
+        return new TaskRecord(id, type, name, description, status, parentId, startTime, duration);
+    }
+
+    private static void appendText(StringBuilder out, String value) {
+        if (!needsQuotes(value)) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void appendDateTime(StringBuilder out, LocalDateTime dateTime) {
+        if (dateTime == null) {
+            out.append(NONE);
+            return;
+        }
+        if (dateTime.getYear() < 0 || dateTime.getYear() > 9999) {
+            DATE_TIME.formatTo(dateTime, out);
+            return;
+        }
+        appendPadded(out, dateTime.getDayOfMonth(), 2).append('.');
+        appendPadded(out, dateTime.getMonthValue(), 2).append('.');
+        appendPadded(out, dateTime.getYear(), 4).append(' ');
+        appendPadded(out, dateTime.getHour(), 2).append(':');
+        appendPadded(out, dateTime.getMinute(), 2).append(':');
+        appendPadded(out, dateTime.getSecond(), 2);
+    }
+
+    private static StringBuilder appendPadded(StringBuilder out, int value, int width) {
+        for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+            if (value < limit) {
+                out.append('0');
+            }
+        }
+        return out.append(value);
+    }
+
+    // Позиция разбора внутри строки записи.
+    private static final class Cursor {
+        private final String line;
+        private int position;
+
+        Cursor(String line, int position) {
+            this.line = line;
+            this.position = position;
+        }
+
+        // Конец текущего поля без учёта кавычек.
+        private int fieldEnd() {
+            int end = line.indexOf(',', position);
+            return end < 0 ? line.length() : end;
+        }
+
+        private void moveAfter(int end) {
+            position = end + 1;
+        }
+
+        // Пропуск поля со значением None; возвращает true, если поле было пропущено.
+        boolean skipNone() {
+            int end = fieldEnd();
+            if (end - position == NONE.length() && line.startsWith(NONE, position)) {
+                moveAfter(end);
+                return true;
+            }
+            return false;
+        }
+
+        int nextInt() {
+            int end = fieldEnd();
+            int value = Integer.parseInt(line, position, end, 10);
+            moveAfter(end);
+            return value;
+        }
+
+        long nextLong() {
+            int end = fieldEnd();
+            long value = Long.parseLong(line, position, end, 10);
+            moveAfter(end);
+            return value;
+        }
+
+        <E extends Enum<E>> E nextEnum(E[] values) {
+            int end = fieldEnd();
+            for (E value : values) {
+                String name = value.name();
+                if (name.length() == end - position && line.startsWith(name, position)) {
+                    moveAfter(end);
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Неизвестное значение: " + line.substring(position, end));
+        }
+
+        // Поле в кавычках разбирается по RFC 4180. Если за закрывающей кавычкой нет запятой, поле
+        // записано старой версией без экранирования, и кавычки в нём читаются как обычные символы.
+        String nextText() {
+            if (position < line.length() && line.charAt(position) == '"') {
+                String quoted = nextQuoted();
+                if (quoted != null) {
+                    return quoted;
+                }
+            }
+            int end = fieldEnd();
+            String value = line.substring(position, end);
+            moveAfter(end);
+            return value;
+        }
+
+        private String nextQuoted() {
+            StringBuilder value = new StringBuilder();
+            int i = position + 1;
+            while (true) {
+                int quote = line.indexOf('"', i);
+                if (quote < 0) {
+                    return null;
+                }
+                value.append(line, i, quote);
+                if (quote + 1 < line.length() && line.charAt(quote + 1) == '"') {
+                    value.append('"');
+                    i = quote + 2;
+                } else if (quote + 1 == line.length() || line.charAt(quote + 1) == ',') {
+                    moveAfter(quote + 1);
+                    return value.toString();
+                } else {
+                    return null;
+                }
+            }
+        }
+
+        LocalDateTime nextDateTime() {
+            int end = fieldEnd();
+            LocalDateTime value = end - position == DATE_TIME_LENGTH
+                    ? LocalDateTime.of(digits(6, 4), digits(3, 2), digits(0, 2),
+                    digits(11, 2), digits(14, 2), digits(17, 2))
+                    : LocalDateTime.parse(line.subSequence(position, end), DATE_TIME);
+            moveAfter(end);
+            return value;
+        }
+
+        private int digits(int offset, int length) {
+            return Integer.parseInt(line, position + offset, position + offset + length, 10);
+        }
+    }
+}
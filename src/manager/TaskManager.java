@@ -4,8 +4,16 @@ import model.Epic;
 import model.Status;
 import model.Subtask;
 import model.Task;
+import model.TimeSlot;
 
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface TaskManager {
     // Метод генерации неповторяющегося ID.
@@ -25,6 +33,17 @@ public interface TaskManager {
 
     List<Subtask> getAllSubtasks();
 
+    // Методы постраничного получения: страница начинается после курсора, полученного с предыдущей страницей,
+    // или с PageCursor.first(). Task, Epic и Subtask выдаются по возрастанию id,
+    // getPrioritizedPage - задачи со временем начала по его возрастанию.
+    TaskPage<Task> getTasksPage(PageCursor after, int limit);
+
+    TaskPage<Epic> getEpicsPage(PageCursor after, int limit);
+
+    TaskPage<Subtask> getSubtasksPage(PageCursor after, int limit);
+
+    TaskPage<Task> getPrioritizedPage(PageCursor after, int limit);
+
     // Методы получения по ID из HashMap.
     Task getTask(int id);
 
@@ -53,4 +72,26 @@ public interface TaskManager {
 
     void updateDescription(Task task, String description);
 
+    // Метод настройки времени выполнения.
+    void setStartTimeAndDuration(Task task, LocalDateTime startTime, Duration duration);
+
+    // Метод планирования пачки задач за один проход по расписанию. Возвращает результат для каждой задачи
+    // в порядке slots.
+    Map<Task, ScheduleOutcome> scheduleAll(Map<Task, TimeSlot> slots);
+
+    // Метод проверки всего расписания: все пары пересекающихся задач в порядке начала более поздней из них.
+    List<TaskConflict> findAllConflicts();
+
+    // Метод пакетного изменения: все изменения внутри action применяются вместе или откатываются при исключении.
+    void inBatch(Consumer<TaskManager> action);
+
+    // Методы потоковой выгрузки и загрузки: задачи пишутся и читаются по одной, без копирования всех задач
+    // в списки. Формат CSV или BINARY, поток или канал не закрываются.
+    void exportTo(OutputStream target, SnapshotFormat format);
+
+    void exportTo(WritableByteChannel target, SnapshotFormat format);
+
+    // Загрузка задач, выгруженных exportTo, с их id; формат определяется по заголовку. Возвращает количество задач.
+    int importFrom(ReadableByteChannel source);
+
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package manager;
+
+import model.Task;
+
+import java.util.List;
+
+// Страница задач и курсор следующей страницы; next равен null на последней странице.
+public record TaskPage<T extends Task>(List<T> items, PageCursor next) {
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
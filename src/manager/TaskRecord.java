@@ -0,0 +1,36 @@
+package manager;
+
+import model.Epic;
+import model.Status;
+import model.Subtask;
+import model.Task;
+import model.TaskType;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+// Прочитанная из файла запись задачи до добавления в менеджер.
+// При отложенной загрузке описания description равно null, а descriptionOffset и descriptionLength
+// указывают на текст в файле снимка; иначе descriptionOffset равно -1.
+record TaskRecord(int id, TaskType type, String name, String description, Status status, int parentId,
+                  LocalDateTime startTime, Duration duration, long descriptionOffset, int descriptionLength) {
+
+    TaskRecord(int id, TaskType type, String name, String description, Status status, int parentId,
+               LocalDateTime startTime, Duration duration) {
+        this(id, type, name, description, status, parentId, startTime, duration, -1, 0);
+    }
+
+    // Задача с полями записи. Время Epic не хранится в записи и вычисляется по его Subtask.
+    Task toTask() {
+        Task task = switch (type) {
+            case TASK -> new Task(id, name, description, status);
+            case EPIC -> new Epic(id, name, description);
+            case SUBTASK -> new Subtask(id, parentId, name, description, status);
+        };
+        if (type != TaskType.EPIC) {
+            task.setStartTime(startTime);
+            task.setDurationTime(duration);
+        }
+        return task;
+    }
+}
@@ -0,0 +1,37 @@
+package manager;
+
+// Очередь асинхронной записи FileBackedTaskManager: изменения сохраняет отдельный поток записи,
+// а вызывающие потоки не ждут диска. capacity - количество изменений, ещё не записанных на диск,
+// после которого срабатывает backpressure. Нулевая ёмкость означает, что очередь не используется.
+public record WriteQueue(int capacity, Backpressure backpressure) {
+
+    public WriteQueue {
+        if (capacity < 0 || backpressure == null) {
+            throw new IllegalArgumentException("Некорректные параметры очереди записи");
+        }
+    }
+
+    // Изменения записываются вызывающим потоком согласно FlushPolicy.
+    public static WriteQueue none() {
+        return new WriteQueue(0, Backpressure.BLOCK);
+    }
+
+    public static WriteQueue blocking(int capacity) {
+        return bounded(capacity, Backpressure.BLOCK);
+    }
+
+    public static WriteQueue rejecting(int capacity) {
+        return bounded(capacity, Backpressure.REJECT);
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    private static WriteQueue bounded(int capacity, Backpressure backpressure) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Ёмкость очереди записи должна быть положительной");
+        }
+        return new WriteQueue(capacity, backpressure);
+    }
+}
@@ -0,0 +1,9 @@
+package manager;
+
+// Состояние очереди асинхронной записи.
+// depth - изменения, ещё не записанные на диск; lagNanos - возраст самого старого из них;
+// lastWriteLagNanos - время от постановки в очередь до записи для последней завершённой записи;
+// writes - количество завершённых записей, rejected - количество отклонённых изменений.
+public record WriteQueueMetrics(int depth, int capacity, long lagNanos, long lastWriteLagNanos, long writes,
+                                long rejected) {
+}
@@ -0,0 +1,6 @@
+package model;
+
+// Хранилище, из которого описание задачи читается по требованию: задача держит только смещение и длину.
+public interface DescriptionStore {
+    String load(long offset, int length);
+}
@@ -58,7 +58,7 @@ public class Epic extends Task {
         return "Epic {" +
                 "|id=" + id + "|" +
                 ", |name='" + name + "|" +
-                ", |description='" + description.length() + "|" +
+                ", |description='" + getDescription().length() + "|" +
                 ", |status=" + status + "|" +
                 ", |subtasksId=" + subtasksId + "|" +
                 ", |startTime = " + taskStartTime + "|" +
@@ -75,7 +75,7 @@ public class Epic extends Task {
         Epic epic = (Epic) o;
         return id == epic.id &&
                 name.equals(epic.name) &&
-                description.equals(epic.description) &&
+                getDescription().equals(epic.getDescription()) &&
                 status == epic.status &&
                 subtasksId.equals(epic.subtasksId);
     }
@@ -32,7 +32,7 @@ public class Subtask extends Task {
         return "Subtask {" +
                 "|id = " + id +
                 ", |name = " + name + "|" +
-                ", |description = " + description.length() + "|" +
+                ", |description = " + getDescription().length() + "|" +
                 ", |status = " + status + "|" +
                 ", |parentId = " + parentId + "|" +
                 ", |startTime = " + taskStartTime + "|" +
@@ -49,7 +49,7 @@ public class Subtask extends Task {
         Subtask subtask = (Subtask) o;
         return id == subtask.id &&
                 name.equals(subtask.name) &&
-                description.equals(subtask.description) &&
+                getDescription().equals(subtask.getDescription()) &&
                 status == subtask.status &&
                 parentId == subtask.parentId;
     }
@@ -8,11 +8,15 @@ public class Task {
 
     protected int id;
     protected String name;
-    protected String description;
+    protected volatile String description;
     protected Status status;
     protected LocalDateTime startTime;
     protected Long duration = 0L;
 
+    // Описание, вынесенное из памяти: description равно null, текст читается из хранилища при обращении.
+    // Хранилище, смещение и длина заменяются одной ссылкой, чтобы другой поток не увидел их вперемешку.
+    private volatile DescriptionHandle descriptionHandle;
+
     public Task(int id, String name, String description, Status status) {
         this.id = id;
         this.name = name;
@@ -41,11 +45,39 @@ public class Task {
     }
 
     public String getDescription() {
-        return description;
+        String text = description;
+        DescriptionHandle handle = descriptionHandle;
+        if (handle != null) {
+            return handle.store().load(handle.offset(), handle.length());
+        }
+        return text;
     }
 
     public void setDescription(String name) {
         this.description = name;
+        this.descriptionHandle = null;
+    }
+
+    // Замена текста описания ссылкой на него в хранилище.
+    public void setDescriptionHandle(DescriptionStore store, long offset, int length) {
+        this.descriptionHandle = new DescriptionHandle(store, offset, length);
+        this.description = null;
+    }
+
+    // Хранилище описания или null, если описание находится в памяти.
+    public DescriptionStore getDescriptionStore() {
+        DescriptionHandle handle = descriptionHandle;
+        return handle == null ? null : handle.store();
+    }
+
+    public long getDescriptionOffset() {
+        DescriptionHandle handle = descriptionHandle;
+        return handle == null ? 0 : handle.offset();
+    }
+
+    public int getDescriptionLength() {
+        DescriptionHandle handle = descriptionHandle;
+        return handle == null ? 0 : handle.length();
     }
 
     public LocalDateTime getStartTime() {
@@ -92,7 +124,7 @@ public class Task {
         return "Task {" +
                 "|id = " + id + "|" +
                 ", |name = " + name + "|" +
-                ", |description = " + description.length() + "|" +
+                ", |description = " + getDescription().length() + "|" +
                 ", |status = " + status + "|" +
                 ", |startTime = " + taskStartTime + "|" +
                 ", |duration = " + duration + "|" +
@@ -108,7 +140,11 @@ public class Task {
         Task task = (Task) o;
         return id == task.id &&
                 name.equals(task.name) &&
-                description.equals(task.description) &&
+                getDescription().equals(task.getDescription()) &&
                 status == task.status;
     }
+
+    // Место описания в хранилище; текст читается только через одну целую ссылку.
+    private record DescriptionHandle(DescriptionStore store, long offset, int length) {
+    }
 }
@@ -0,0 +1,18 @@
+package model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+// Интервал времени для планирования задачи: начало и длительность.
+public record TimeSlot(LocalDateTime start, Duration duration) {
+
+    public TimeSlot {
+        if (start == null || duration == null || duration.isNegative()) {
+            throw new IllegalArgumentException("Слот должен иметь начало и неотрицательную длительность");
+        }
+    }
+
+    public LocalDateTime end() {
+        return start.plus(duration);
+    }
+}
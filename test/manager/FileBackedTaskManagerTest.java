@@ -2,16 +2,34 @@ package manager;
 
 import exceptions.ManagerReadException;
 import exceptions.ManagerSaveException;
+import model.DescriptionStore;
 import model.Epic;
 import model.Status;
 import model.Subtask;
 import model.Task;
+import model.TaskType;
+import model.TimeSlot;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -28,6 +46,23 @@ class FileBackedTaskManagerTest extends TaskManagerTest<FileBackedTaskManager> {
         }
     }
 
+    @AfterEach
+    void deleteJournalSegments() {
+        manager.getJournalSegments().forEach(File::delete);
+        manager.getHistoryFile().delete();
+        String prefix = manager.getFile().getName() + ".";
+        File[] shards = manager.getFile().getParentFile().listFiles((dir, name) -> name.startsWith(prefix));
+        if (shards != null) {
+            Arrays.stream(shards).forEach(File::delete);
+        }
+    }
+
+    // Файл шарда поколения, на которое ссылается текущий манифест.
+    private File currentShard(TaskType type, int shard) throws IOException {
+        long generation = ShardedSnapshot.readManifest(manager.getFile()).generation();
+        return ShardedSnapshot.shardFile(manager.getFile(), generation, type, shard);
+    }
+
     // Тест, в котором проверяется создание менеджера без загрузки если файл отсутствует
     @Test
     void loadFromMissingFileReturnsEmptyManager() throws IOException {
@@ -207,6 +242,959 @@ class FileBackedTaskManagerTest extends TaskManagerTest<FileBackedTaskManager> {
         assertTrue(loaded.getAllSubtasks().contains(subtask));
     }
 
+    // В режиме JOURNAL изменения дописываются в журнал, а снимок не перезаписывается.
+    @Test
+    void journalModeAppendsRecordsInsteadOfRewritingSnapshot() throws IOException {
+        FileBackedTaskManager journaled = new FileBackedTaskManager(manager.getFile(), PersistenceMode.JOURNAL);
+
+        Task task = journaled.createTask("Task", "Description", Status.NEW);
+        long snapshotLength = journaled.getFile().length();
+        journaled.updateStatus(task, Status.DONE);
+        journaled.updateName(task, "Renamed");
+
+        assertEquals(snapshotLength, journaled.getFile().length(), "Снимок не должен перезаписываться");
+        List<String> records = new ArrayList<>();
+        JournalFrames.read(journaled.getJournalSegments().getFirst(), true, records::add);
+        assertEquals(3, records.size(), "Каждое изменение должно добавлять одну запись в журнал");
+    }
+
+    // Загрузка должна проигрывать журнал поверх последнего снимка.
+    @Test
+    void loadFromFileReplaysJournalOnTopOfSnapshot() {
+        FileBackedTaskManager journaled = new FileBackedTaskManager(manager.getFile(), PersistenceMode.JOURNAL);
+        Task task = journaled.createTask("Task", "Description", Status.NEW);
+        Task deleted = journaled.createTask("Deleted", "Description", Status.NEW);
+        Epic epic = journaled.createEpic("Epic", "Description");
+        Subtask subtask = journaled.createSubtask(epic, "Subtask", "Description", Status.NEW);
+        journaled.checkpoint();
+
+        journaled.updateStatus(subtask, Status.DONE);
+        journaled.setStartTimeAndDuration(task, LocalDateTime.of(2025, 9, 15, 10, 0), Duration.ofMinutes(30));
+        journaled.updateDescription(task, "Changed");
+        journaled.deleteTask(deleted.getId());
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile(), PersistenceMode.JOURNAL);
+
+        Task loadedTask = loaded.getTask(task.getId());
+        assertEquals("Changed", loadedTask.getDescription());
+        assertEquals(task.getStartTime(), loadedTask.getStartTime());
+        assertTrue(loaded.getTasksByPriority(true).contains(task));
+        assertNull(loaded.getTask(deleted.getId()), "Удалённая задача не должна восстанавливаться");
+        assertEquals(Status.DONE, loaded.getSubtask(subtask.getId()).getStatus());
+        assertEquals(Status.DONE, loaded.getEpic(epic.getId()).getStatus(), "Статус Epic должен пересчитываться");
+    }
+
+    // Загрузка в режиме SNAPSHOT должна сворачивать журнал в снимок.
+    @Test
+    void snapshotLoadFoldsJournalIntoSnapshot() {
+        FileBackedTaskManager journaled = new FileBackedTaskManager(manager.getFile(), PersistenceMode.JOURNAL);
+        Task task = journaled.createTask("Task", "Description", Status.NEW);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+
+        assertTrue(loaded.getJournalSegments().isEmpty(), "Журнал должен быть удалён после свёртки");
+        assertEquals(task, FileBackedTaskManager.loadFromFile(manager.getFile()).getTask(task.getId()));
+    }
+
+    // При превышении порога журнал должен сворачиваться в снимок, а старые сегменты удаляться.
+    @Test
+    void journalIsCompactedInBackgroundAfterThreshold() {
+        FileBackedTaskManager journaled = new FileBackedTaskManager(manager.getFile(), PersistenceMode.JOURNAL);
+        journaled.setCompactionThresholds(Long.MAX_VALUE, 5);
+        Epic epic = journaled.createEpic("Epic", "Description");
+        for (int i = 0; i < 12; i++) {
+            Subtask subtask = journaled.createSubtask(epic, "Subtask " + i, "Description", Status.NEW);
+            journaled.updateStatus(subtask, Status.DONE);
+            journaled.awaitCompaction();
+        }
+
+        assertTrue(journaled.getJournalSegments().size() <= 1, "Старые сегменты должны удаляться");
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile(), PersistenceMode.JOURNAL);
+        assertEquals(12, loaded.getAllSubtasks().size());
+        assertEquals(Status.DONE, loaded.getEpic(epic.getId()).getStatus());
+    }
+
+    // При отложенной записи изменения не попадают в файл до flush(), а затем записываются одним обращением.
+    @Test
+    void writeBehindModeDefersWritesUntilFlush() {
+        FileBackedTaskManager writeBehind = new FileBackedTaskManager(manager.getFile(),
+                StorageOptions.defaults().withFlushPolicy(FlushPolicy.interval(60_000)));
+        Epic epic = writeBehind.createEpic("Epic", "Description");
+        for (int i = 0; i < 10; i++) {
+            writeBehind.createSubtask(epic, "Subtask " + i, "Description", Status.NEW);
+        }
+
+        assertEquals(0, manager.getFile().length(), "До flush() файл не должен изменяться");
+
+        writeBehind.close();
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+        assertEquals(10, loaded.getAllSubtasks().size());
+    }
+
+    // Политика count должна записывать изменения фоновым потоком после заданного количества изменений.
+    @Test
+    void countPolicyFlushesInBackgroundAfterMutations() throws InterruptedException {
+        FileBackedTaskManager writeBehind = new FileBackedTaskManager(manager.getFile(),
+                StorageOptions.defaults().withMode(PersistenceMode.JOURNAL).withFlushPolicy(FlushPolicy.count(3)));
+        Task task = writeBehind.createTask("Task", "Description", Status.NEW);
+        writeBehind.updateStatus(task, Status.IN_PROGRESS);
+        writeBehind.updateName(task, "Renamed");
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (writeBehind.getJournalSegments().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        writeBehind.close();
+
+        Task loadedTask = FileBackedTaskManager.loadFromFile(manager.getFile(), PersistenceMode.JOURNAL)
+                .getTask(task.getId());
+        assertEquals("Renamed", loadedTask.getName());
+        assertEquals(Status.IN_PROGRESS, loadedTask.getStatus());
+    }
+
+    // Пакет должен сохраняться в файл один раз после завершения, а при откате файл не должен изменяться.
+    @Test
+    void inBatchPersistsOnceAtCommitAndNothingOnRollback() {
+        Epic epic = manager.createEpic("Epic", "Description");
+        long lengthBeforeBatch = manager.getFile().length();
+
+        manager.inBatch(m -> {
+            for (int i = 0; i < 10; i++) {
+                m.createSubtask(epic, "Subtask " + i, "Description", Status.NEW);
+            }
+            assertEquals(lengthBeforeBatch, manager.getFile().length(), "Внутри пакета файл не должен изменяться");
+        });
+        assertEquals(10, FileBackedTaskManager.loadFromFile(manager.getFile()).getAllSubtasks().size());
+
+        long lengthAfterBatch = manager.getFile().length();
+        assertThrows(IllegalStateException.class, () -> manager.inBatch(m -> {
+            m.deleteEpic(epic.getId());
+            throw new IllegalStateException("Ошибка внутри пакета");
+        }));
+
+        assertEquals(lengthAfterBatch, manager.getFile().length(), "Откаченный пакет не должен сохраняться");
+        assertEquals(10, manager.getAllSubtasks().size());
+    }
+
+    // Двоичный снимок должен сохранять и восстанавливать все поля задач.
+    @Test
+    void saveAndLoadBinarySnapshot() throws IOException {
+        FileBackedTaskManager binary = new FileBackedTaskManager(manager.getFile(),
+                StorageOptions.defaults().withFormat(SnapshotFormat.BINARY));
+        Task task = binary.createTask("Задача, с запятой", "Описание", Status.IN_PROGRESS);
+        binary.setStartTimeAndDuration(task, LocalDateTime.of(2025, 9, 15, 10, 0, 30), Duration.ofMinutes(60));
+        Epic epic = binary.createEpic("Epic", "");
+        Subtask subtask = binary.createSubtask(epic, "Subtask", "Description", Status.DONE);
+        binary.setStartTimeAndDuration(subtask, LocalDateTime.of(2025, 9, 16, 10, 0), Duration.ofMinutes(45));
+
+        assertTrue(BinarySnapshot.isBinary(manager.getFile()), "Файл должен начинаться с заголовка формата");
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+        Task loadedTask = loaded.getTask(task.getId());
+        assertEquals(task, loadedTask);
+        assertEquals(task.getStartTime(), loadedTask.getStartTime());
+        assertEquals(task.getDurationTime(), loadedTask.getDurationTime());
+        assertEquals(epic, loaded.getEpic(epic.getId()));
+        assertEquals(epic.getStartTime(), loaded.getEpic(epic.getId()).getStartTime());
+        assertEquals(Status.DONE, loaded.getEpic(epic.getId()).getStatus());
+        assertEquals(subtask, loaded.getSubtask(subtask.getId()));
+        assertTrue(loaded.getTasksByPriority(true).contains(subtask));
+    }
+
+    // Чтение окнами отображения должно давать те же записи и смещения описаний, что и чтение одним окном,
+    // а оборванная последняя запись - приводить к IOException.
+    @Test
+    void binarySnapshotIsReadInMappingWindows() throws IOException {
+        FileBackedTaskManager binary = new FileBackedTaskManager(manager.getFile(),
+                StorageOptions.defaults().withFormat(SnapshotFormat.BINARY));
+        Epic epic = binary.createEpic("Epic", "Описание эпика");
+        for (int i = 0; i < 20; i++) {
+            binary.createSubtask(epic, "Subtask " + i, "Описание " + "x".repeat(i), Status.NEW);
+        }
+
+        for (boolean lazy : List.of(false, true)) {
+            List<TaskRecord> whole = new ArrayList<>();
+            List<TaskRecord> windowed = new ArrayList<>();
+            BinarySnapshot.read(manager.getFile(), whole::add, lazy);
+            BinarySnapshot.read(manager.getFile(), windowed::add, lazy, 128);
+            assertEquals(21, windowed.size());
+            assertEquals(whole, windowed);
+        }
+
+        long size = manager.getFile().length();
+        try (FileChannel channel = FileChannel.open(manager.getFile().toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+        assertThrows(IOException.class, () -> BinarySnapshot.read(manager.getFile(), record -> {
+        }, false, 128));
+    }
+
+    // CSV-файл должен читаться и при выбранном двоичном формате, а следующая запись переводит его в новый формат.
+    @Test
+    void csvSnapshotIsReadWhenBinaryFormatSelected() throws IOException {
+        Task task = manager.createTask("Task", "Description", Status.NEW);
+
+        FileBackedTaskManager binary = FileBackedTaskManager.loadFromFile(manager.getFile(),
+                StorageOptions.defaults().withFormat(SnapshotFormat.BINARY));
+        assertEquals(task, binary.getTask(task.getId()));
+
+        binary.updateStatus(binary.getTask(task.getId()), Status.DONE);
+        assertTrue(BinarySnapshot.isBinary(manager.getFile()));
+        assertEquals(Status.DONE, FileBackedTaskManager.loadFromFile(manager.getFile()).getTask(task.getId()).getStatus());
+    }
+
+    // Потоковая загрузка должна читать файлы больше одного блока и не зависеть от порядка строк.
+    @Test
+    void streamingLoaderReadsLargeFileWithSubtasksBeforeEpics() throws IOException {
+        StringBuilder csv = new StringBuilder("id,type,name,status,description,epic,startTime,duration,endTime\n");
+        int count = 10_000;
+        for (int i = 1; i <= count; i++) {
+            csv.append(count + i).append(",SUBTASK,Subtask,DONE,Description,").append(i).append(",None,0,None\n");
+        }
+        for (int i = 1; i <= count; i++) {
+            csv.append(i).append(",EPIC,Epic,NEW,Description,None,None,0,None\n");
+        }
+        Files.writeString(manager.getFile().toPath(), csv);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+
+        assertEquals(count, loaded.getAllEpics().size());
+        assertEquals(count, loaded.getAllSubtasks().size());
+        assertEquals(List.of(2 * count), loaded.getEpic(count).getSubtasksId());
+        assertEquals(Status.DONE, loaded.getEpic(count).getStatus());
+    }
+
+    // При загрузке пересекающиеся по времени задачи не должны попадать в tasksByPriority, но пересечение
+    // должно оставаться видно findAllConflicts.
+    @Test
+    void bulkLoadRejectsOverlappingRowsInSingleSweep() throws IOException {
+        Files.writeString(manager.getFile().toPath(), """
+                id,type,name,status,description,epic,startTime,duration,endTime
+                1,TASK,Task 1,NEW,Description,None,15.09.2025 10:00:00,60,15.09.2025 11:00:00
+                2,TASK,Task 2,NEW,Description,None,15.09.2025 10:30:00,60,15.09.2025 11:30:00
+                3,EPIC,Epic,NEW,Description,None,None,0,None
+                4,SUBTASK,Subtask 1,DONE,Description,3,15.09.2025 12:00:00,30,15.09.2025 12:30:00
+                5,SUBTASK,Subtask 2,NEW,Description,3,15.09.2025 13:00:00,30,15.09.2025 13:30:00
+                """);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+
+        assertEquals(3, loaded.getTasksByPriority(true).size());
+        assertEquals(LocalDateTime.of(2025, 9, 15, 10, 30), loaded.getTask(2).getStartTime());
+        assertEquals(List.of(new TaskConflict(loaded.getTask(1), loaded.getTask(2))), loaded.findAllConflicts());
+        Epic epic = loaded.getEpic(3);
+        assertEquals(Status.IN_PROGRESS, epic.getStatus());
+        assertEquals(LocalDateTime.of(2025, 9, 15, 12, 0), epic.getStartTime());
+        assertEquals(LocalDateTime.of(2025, 9, 15, 13, 30), epic.getEndTime());
+    }
+
+    // Файл старого формата с кавычками в имени без экранирования должен загружаться без сдвига полей.
+    @Test
+    void loadsLegacyFileWithRawQuotesInName() throws IOException {
+        Files.writeString(manager.getFile().toPath(), """
+                id,type,name,status,description,epic,startTime,duration,endTime
+                1,TASK,Купить "молоко",DONE,Description,None,None,0,None
+                2,EPIC,Монитор 27",NEW,Description,None,None,0,None
+                3,SUBTASK,Подзадача,NEW,Описание "в кавычках",2,15.09.2025 10:00:00,30,15.09.2025 10:30:00
+                """);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+
+        assertEquals("Купить \"молоко\"", loaded.getTask(1).getName());
+        assertEquals(Status.DONE, loaded.getTask(1).getStatus());
+        assertEquals("Монитор 27\"", loaded.getEpic(2).getName());
+        assertEquals("Описание \"в кавычках\"", loaded.getSubtask(3).getDescription());
+        assertEquals(List.of(3), loaded.getEpic(2).getSubtasksId());
+    }
+
+    // Имя и описание с запятыми и переводами строк должны сохраняться в снимке и в журнале.
+    @Test
+    void saveAndLoadTextWithCommasAndLineBreaks() {
+        Task task = manager.createTask("Купить: хлеб, молоко", "Список:\n- хлеб,\n- \"молоко\"", Status.NEW);
+
+        assertEquals(task, FileBackedTaskManager.loadFromFile(manager.getFile()).getTask(task.getId()));
+
+        FileBackedTaskManager journaled = FileBackedTaskManager.loadFromFile(manager.getFile(),
+                PersistenceMode.JOURNAL);
+        journaled.updateDescription(journaled.getTask(task.getId()), "a,b\nc");
+
+        assertEquals("a,b\nc", FileBackedTaskManager.loadFromFile(manager.getFile(), PersistenceMode.JOURNAL)
+                .getTask(task.getId()).getDescription());
+    }
+
+    // Страничный снимок должен сохранять изменения, удаления и переезды записей между загрузками.
+    @Test
+    void pagedSnapshotKeepsChangesAcrossLoads() {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.PAGED);
+        FileBackedTaskManager paged = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task task = paged.createTask("task", "des", Status.NEW);
+        Epic epic = paged.createEpic("epic", "des");
+        Subtask subtask = paged.createSubtask(epic, "subtask", "des", Status.NEW);
+        Task removed = paged.createTask("removed", "des", Status.NEW);
+
+        paged = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        paged.updateStatus(paged.getSubtask(subtask.getId()), Status.DONE);
+        paged.updateDescription(paged.getTask(task.getId()), "описание, которое не помещается в прежний слот");
+        paged.deleteTask(removed.getId());
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+
+        assertEquals(List.of(task.getId()), loaded.getAllTasks().stream().map(Task::getId).toList());
+        assertEquals("описание, которое не помещается в прежний слот",
+                loaded.getTask(task.getId()).getDescription());
+        assertEquals(Status.DONE, loaded.getEpic(epic.getId()).getStatus());
+        assertEquals(List.of(subtask.getId()), loaded.getEpic(epic.getId()).getSubtasksId());
+    }
+
+    // Изменённая задача должна записываться в другой слот, не переписывая остальные записи файла,
+    // а её прежний слот - только помечаться свободным и занимать следующую версию.
+    @Test
+    void pagedSnapshotWritesChangedRecordToAnotherSlot() throws IOException {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.PAGED);
+        FileBackedTaskManager paged = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task first = paged.createTask("first", "des", Status.NEW);
+        Task second = paged.createTask("second", "des", Status.NEW);
+        byte[] before = Files.readAllBytes(paged.getFile().toPath());
+
+        paged.updateStatus(second, Status.IN_PROGRESS);
+
+        byte[] after = Files.readAllBytes(paged.getFile().toPath());
+        assertTrue(after.length > before.length, "Новая версия должна попасть в новый слот");
+        int changed = 0;
+        for (int i = 0; i < before.length; i++) {
+            if (before[i] != after[i]) {
+                changed++;
+            }
+        }
+        assertEquals(1, changed, "В прежней части файла должно измениться только состояние старого слота");
+        paged.updateStatus(second, Status.DONE);
+        assertEquals(after.length, paged.getFile().length(), "Следующая версия должна занять освобождённый слот");
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(paged.getFile(), options);
+        assertEquals(Status.NEW, loaded.getTask(first.getId()).getStatus());
+        assertEquals(Status.DONE, loaded.getTask(second.getId()).getStatus());
+    }
+
+    // Слот, повреждённый без целой прежней версии, должен давать ошибку чтения, а не неверные данные.
+    @Test
+    void pagedSnapshotDetectsCorruptedSlot() throws IOException {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.PAGED);
+        FileBackedTaskManager paged = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        paged.createTask("task", "description", Status.NEW);
+        paged.createTask("last", "des", Status.NEW);
+        byte[] bytes = Files.readAllBytes(paged.getFile().toPath());
+        int name = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("description");
+        bytes[name] = 'D';
+        Files.write(paged.getFile().toPath(), bytes);
+
+        assertThrows(ManagerReadException.class, () -> FileBackedTaskManager.loadFromFile(paged.getFile(), options));
+    }
+
+    // После сбоя между записью нового слота и освобождением старого оборванный новый слот должен
+    // пропускаться в пользу целой прежней версии.
+    @Test
+    void pagedSnapshotFallsBackToIntactPreviousSlot() throws IOException {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.PAGED);
+        FileBackedTaskManager paged = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task task = paged.createTask("task", "des", Status.NEW);
+        byte[] before = Files.readAllBytes(paged.getFile().toPath());
+        paged.updateDescription(task, "описание, которое не помещается в прежний слот");
+        byte[] after = Files.readAllBytes(paged.getFile().toPath());
+
+        byte[] crashed = Arrays.copyOf(after, after.length);
+        System.arraycopy(before, 0, crashed, 0, before.length);
+        int moved = new String(after, StandardCharsets.ISO_8859_1).lastIndexOf(
+                new String("описание".getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1));
+        assertTrue(moved >= before.length, "Запись должна переехать в новый слот в конце файла");
+        crashed[moved] ^= 1;
+        Files.write(paged.getFile().toPath(), crashed);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(paged.getFile(), options);
+        assertEquals("des", loaded.getTask(task.getId()).getDescription());
+    }
+
+    // Сбой посреди дописывания нового слота в конец файла оставляет короткий хвост: он должен отрезаться,
+    // а задача - загружаться в целой прежней версии.
+    @Test
+    void pagedSnapshotTruncatesPartialSlotAtEnd() throws IOException {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.PAGED);
+        FileBackedTaskManager paged = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task task = paged.createTask("task", "des", Status.NEW);
+        byte[] before = Files.readAllBytes(paged.getFile().toPath());
+        paged.updateDescription(task, "описание, которое не помещается в прежний слот");
+        byte[] after = Files.readAllBytes(paged.getFile().toPath());
+
+        byte[] crashed = Arrays.copyOf(before, before.length + 30);
+        System.arraycopy(after, before.length, crashed, before.length, 30);
+        Files.write(paged.getFile().toPath(), crashed);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(paged.getFile(), options);
+        assertEquals("des", loaded.getTask(task.getId()).getDescription());
+        loaded.updateStatus(loaded.getTask(task.getId()), Status.DONE);
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(paged.getFile(), options);
+        assertEquals(Status.DONE, reloaded.getTask(task.getId()).getStatus());
+        assertEquals("des", reloaded.getTask(task.getId()).getDescription());
+    }
+
+    // Оборванная запись новой версии в свободный слот посреди файла не должна мешать загрузке:
+    // прежний слот ещё не освобождён и остаётся целым.
+    @Test
+    void pagedSnapshotKeepsPreviousVersionWhenUpdateIsTorn() throws IOException {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.PAGED);
+        FileBackedTaskManager paged = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task removed = paged.createTask("removed", "des", Status.NEW);
+        Task task = paged.createTask("task", "des", Status.NEW);
+        paged.deleteTask(removed.getId());
+        byte[] before = Files.readAllBytes(paged.getFile().toPath());
+        paged.updateStatus(task, Status.DONE);
+        byte[] after = Files.readAllBytes(paged.getFile().toPath());
+        assertEquals(before.length, after.length, "Новая версия должна занять свободный слот");
+
+        int name = new String(after, StandardCharsets.ISO_8859_1).indexOf("task");
+        assertTrue(name < new String(before, StandardCharsets.ISO_8859_1).lastIndexOf("task"));
+        int slot = name / 64 * 64;
+        byte[] crashed = Arrays.copyOf(before, before.length);
+        System.arraycopy(after, slot, crashed, slot, name + 2 - slot);
+        Files.write(paged.getFile().toPath(), crashed);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(paged.getFile(), options);
+        assertEquals(Status.NEW, loaded.getTask(task.getId()).getStatus());
+        assertNull(loaded.getTask(removed.getId()));
+    }
+
+    // Слоты удалённых задач должны занимать новые записи, а при их избытке файл должен переписываться целиком.
+    @Test
+    void pagedSnapshotReusesAndReclaimsFreeSlots() {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.PAGED);
+        FileBackedTaskManager paged = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task removed = paged.createTask("task", "des", Status.NEW);
+        paged.createTask("task", "des", Status.NEW);
+        long size = paged.getFile().length();
+
+        paged.deleteTask(removed.getId());
+        paged.createTask("task", "des", Status.NEW);
+        assertEquals(size, paged.getFile().length(), "Новая запись должна занять освободившийся слот");
+
+        for (int i = 0; i < 200; i++) {
+            paged.createTask("task " + i, "des", Status.NEW);
+        }
+        long full = paged.getFile().length();
+        paged.deleteAllTasks();
+        paged.createTask("last", "des", Status.NEW);
+
+        assertTrue(paged.getFile().length() < full, "Свободное место должно освобождаться полной перезаписью");
+        assertEquals(1, FileBackedTaskManager.loadFromFile(paged.getFile(), options).getAllTasks().size());
+    }
+
+    // Сжатый снимок должен читаться обратно и сообщать степень сжатия.
+    @Test
+    void compressedSnapshotRoundTripReportsRatio() throws IOException {
+        StorageOptions options = StorageOptions.defaults().withCompression(true);
+        FileBackedTaskManager compressed = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Epic epic = compressed.createEpic("Epic", "Повторяющееся описание");
+        compressed.inBatch(batch -> {
+            for (int i = 0; i < 500; i++) {
+                batch.createSubtask(epic, "Subtask", "Повторяющееся описание", Status.NEW);
+            }
+        });
+
+        CompressionStats saved = compressed.getSaveCompressionStats();
+        assertEquals(manager.getFile().length(), saved.compressedBytes());
+        assertTrue(saved.ratio() > 5, "Повторяющиеся данные должны хорошо сжиматься");
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+        assertEquals(500, loaded.getAllSubtasks().size());
+        assertEquals(saved.rawBytes(), loaded.getLoadCompressionStats().rawBytes());
+        assertFalse(Files.readString(manager.getFile().toPath(), StandardCharsets.ISO_8859_1)
+                .contains(CsvSnapshot.HEADER));
+    }
+
+    // Сжатый двоичный снимок должен определяться по заголовку при загрузке с любыми настройками.
+    @Test
+    void compressedBinarySnapshotIsDetectedOnLoad() {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.BINARY)
+                .withCompression(true);
+        FileBackedTaskManager compressed = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task task = compressed.createTask("task", "des", Status.NEW);
+        compressed.setStartTimeAndDuration(task, LocalDateTime.of(2025, 9, 15, 10, 0), Duration.ofMinutes(30));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+
+        assertEquals(task, loaded.getTask(task.getId()));
+        assertEquals(task.getStartTime(), loaded.getTask(task.getId()).getStartTime());
+        assertNull(loaded.getSaveCompressionStats());
+        assertNotNull(loaded.getLoadCompressionStats());
+    }
+
+    // Страничный снимок обновляется по записям со смещениями, поэтому сжатие для него недопустимо.
+    @Test
+    void pagedSnapshotCannotBeCompressed() {
+        assertThrows(IllegalArgumentException.class,
+                () -> StorageOptions.defaults().withFormat(SnapshotFormat.PAGED).withCompression(true));
+    }
+
+    // Изменения через очередь записи должны оказаться на диске после завершения whenPersisted().
+    @Test
+    void writeQueuePersistsChangesInBackground() throws Exception {
+        StorageOptions options = StorageOptions.defaults().withMode(PersistenceMode.JOURNAL)
+                .withWriteQueue(WriteQueue.blocking(1));
+        FileBackedTaskManager queued = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        for (int i = 0; i < 50; i++) {
+            queued.createTask("task " + i, "des", Status.NEW);
+        }
+        queued.whenPersisted().get(5, TimeUnit.SECONDS);
+
+        WriteQueueMetrics metrics = queued.getWriteQueueMetrics();
+        assertEquals(0, metrics.depth());
+        assertTrue(metrics.writes() > 0);
+        assertEquals(50, FileBackedTaskManager.loadFromFile(manager.getFile(), PersistenceMode.JOURNAL)
+                .getAllTasks().size());
+        queued.close();
+    }
+
+    // Переполненная очередь с политикой REJECT должна отклонять изменение, не применяя его в памяти.
+    @Test
+    void writeQueueRejectsChangesWhenFull() throws Exception {
+        StorageOptions options = StorageOptions.defaults().withWriteQueue(WriteQueue.rejecting(2));
+        FileBackedTaskManager queued = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+
+        // Пока монитор менеджера занят, поток записи не может забрать изменения из очереди.
+        synchronized (queued) {
+            queued.createTask("task 1", "des", Status.NEW);
+            queued.createTask("task 2", "des", Status.NEW);
+            assertThrows(ManagerSaveException.class, () -> queued.createTask("task 3", "des", Status.NEW));
+            assertEquals(2, queued.getAllTasks().size());
+            assertEquals(2, queued.getWriteQueueMetrics().depth());
+            assertEquals(1, queued.getWriteQueueMetrics().rejected());
+        }
+
+        queued.whenPersisted().get(5, TimeUnit.SECONDS);
+        assertEquals(2, FileBackedTaskManager.loadFromFile(manager.getFile()).getAllTasks().size());
+        queued.close();
+    }
+
+    // Очередь записи заменяет отложенную запись по FlushPolicy, поэтому вместе они не настраиваются.
+    @Test
+    void writeQueueCannotBeCombinedWithFlushPolicy() {
+        assertThrows(IllegalArgumentException.class, () -> StorageOptions.defaults()
+                .withFlushPolicy(FlushPolicy.interval(100)).withWriteQueue(WriteQueue.blocking(10)));
+    }
+
+    // При отложенной загрузке описания должны читаться из снимка при обращении и кэшироваться ограниченно.
+    @Test
+    void lazyDescriptionsAreReadOnDemandThroughBoundedCache() {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.BINARY)
+                .withLazyDescriptions(2);
+        FileBackedTaskManager writer = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Epic epic = writer.createEpic("epic", "Описание эпика");
+        for (int i = 0; i < 5; i++) {
+            writer.createSubtask(epic, "subtask " + i, "Описание " + i, Status.NEW);
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        List<Subtask> subtasks = loaded.getAllSubtasks();
+        SnapshotDescriptions store = (SnapshotDescriptions) subtasks.getFirst().getDescriptionStore();
+
+        assertNotNull(store, "Описание не должно загружаться в память при чтении снимка");
+        assertEquals(0, store.cachedCount());
+        for (Subtask subtask : subtasks) {
+            assertEquals("Описание " + subtask.getName().substring("subtask ".length()), subtask.getDescription());
+        }
+        assertEquals(2, store.cachedCount());
+        assertEquals(writer.getEpic(epic.getId()), loaded.getEpic(epic.getId()));
+    }
+
+    // Изменённое описание должно сохраняться и после записи снимка снова читаться по требованию.
+    @Test
+    void lazyDescriptionIsReleasedAfterSave() {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.BINARY)
+                .withLazyDescriptions(8);
+        FileBackedTaskManager writer = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task first = writer.createTask("first", "Первое описание", Status.NEW);
+        Task second = writer.createTask("second", "Второе описание", Status.NEW);
+
+        FileBackedTaskManager lazy = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        lazy.updateDescription(lazy.getTask(first.getId()), "Новое описание");
+
+        assertNotNull(lazy.getTask(first.getId()).getDescriptionStore());
+        assertEquals("Новое описание", lazy.getTask(first.getId()).getDescription());
+        assertEquals("Второе описание", lazy.getTask(second.getId()).getDescription());
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+        assertEquals("Новое описание", loaded.getTask(first.getId()).getDescription());
+        assertNull(loaded.getTask(first.getId()).getDescriptionStore());
+    }
+
+    // Старый файл описаний должен оставаться читаемым после замены снимка и закрываться при следующей замене.
+    @Test
+    void replacedDescriptionStoreIsClosedOnNextSave() {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.BINARY)
+                .withLazyDescriptions(8);
+        FileBackedTaskManager writer = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task first = writer.createTask("first", "Первое описание", Status.NEW);
+        writer.createTask("second", "Второе описание", Status.NEW);
+
+        FileBackedTaskManager lazy = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task loadedFirst = lazy.getTask(first.getId());
+        DescriptionStore oldStore = loadedFirst.getDescriptionStore();
+        long offset = loadedFirst.getDescriptionOffset();
+        int length = loadedFirst.getDescriptionLength();
+
+        lazy.updateStatus(loadedFirst, Status.DONE);
+        assertNotSame(oldStore, lazy.getTask(first.getId()).getDescriptionStore());
+        assertEquals("Первое описание", oldStore.load(offset, length));
+
+        lazy.updateStatus(loadedFirst, Status.IN_PROGRESS);
+        assertThrows(ManagerReadException.class, () -> oldStore.load(offset + 1, length - 1));
+        assertEquals("Первое описание", lazy.getTask(first.getId()).getDescription());
+    }
+
+    // Отложенная загрузка описаний возможна только из несжатого двоичного снимка.
+    @Test
+    void lazyDescriptionsRequireUncompressedBinarySnapshot() {
+        assertThrows(IllegalArgumentException.class, () -> StorageOptions.defaults().withLazyDescriptions(16));
+        assertThrows(IllegalArgumentException.class, () -> StorageOptions.defaults()
+                .withFormat(SnapshotFormat.BINARY).withCompression(true).withLazyDescriptions(16));
+    }
+
+    // Снимок, разложенный по шардам, должен загружаться целиком при любых настройках.
+    @Test
+    void shardedSnapshotRoundTrip() throws IOException {
+        StorageOptions options = StorageOptions.defaults().withFormat(SnapshotFormat.BINARY).withShards(4);
+        FileBackedTaskManager sharded = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Epic epic = sharded.createEpic("epic", "des");
+        for (int i = 0; i < 10; i++) {
+            sharded.createTask("task " + i, "des", Status.NEW);
+            sharded.createSubtask(epic, "subtask " + i, "des", Status.DONE);
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+        assertEquals(sharded.getAllTasks(), loaded.getAllTasks());
+        assertEquals(sharded.getAllSubtasks(), loaded.getAllSubtasks());
+        assertEquals(Status.DONE, loaded.getEpic(epic.getId()).getStatus());
+        assertTrue(currentShard(TaskType.SUBTASK, 3).exists());
+    }
+
+    // Изменение задачи должно переписывать только её шард.
+    @Test
+    void shardedSnapshotRewritesOnlyChangedShard() throws IOException {
+        StorageOptions options = StorageOptions.defaults().withShards(2);
+        FileBackedTaskManager sharded = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Epic epic = sharded.createEpic("epic", "des");
+        Subtask subtask = sharded.createSubtask(epic, "subtask", "des", Status.NEW);
+        Task task = sharded.createTask("task", "des", Status.NEW);
+
+        File taskShard = currentShard(TaskType.TASK, task.getId() % 2);
+        File subtaskShard = currentShard(TaskType.SUBTASK, subtask.getId() % 2);
+        Files.setLastModifiedTime(subtaskShard.toPath(), FileTime.fromMillis(0));
+        sharded.updateName(task, "renamed");
+
+        assertEquals(0, subtaskShard.lastModified(), "Шард Subtask не должен переписываться");
+        assertTrue(Files.readString(taskShard.toPath()).contains("renamed"));
+        assertEquals("renamed", FileBackedTaskManager.loadFromFile(manager.getFile(), options)
+                .getTask(task.getId()).getName());
+    }
+
+    // Subtask, чей Epic не попал в шарды из-за сбоя между записью шардов, должен пропускаться при загрузке.
+    @Test
+    void shardedSnapshotSkipsSubtasksOfMissingEpic() throws IOException {
+        StorageOptions options = StorageOptions.defaults().withShards(2);
+        FileBackedTaskManager sharded = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Epic epic = sharded.createEpic("epic", "des");
+        Subtask subtask = sharded.createSubtask(epic, "subtask", "des", Status.NEW);
+        Task task = sharded.createTask("task", "des", Status.NEW);
+        File subtaskShard = currentShard(TaskType.SUBTASK, subtask.getId() % 2);
+        byte[] beforeDelete = Files.readAllBytes(subtaskShard.toPath());
+
+        sharded.deleteEpic(epic.getId());
+        Files.write(subtaskShard.toPath(), beforeDelete);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        assertTrue(loaded.getAllSubtasks().isEmpty());
+        assertEquals(List.of(task), loaded.getAllTasks());
+    }
+
+    // Сбой после записи шардов с новым количеством, но до замены манифеста, не должен смешивать поколения:
+    // загрузка видит только шарды, на которые ссылается прежний манифест.
+    @Test
+    void shardCountChangeIsSwitchedByManifest() throws IOException {
+        FileBackedTaskManager fourShards = FileBackedTaskManager.loadFromFile(manager.getFile(),
+                StorageOptions.defaults().withShards(4));
+        Epic epic = fourShards.createEpic("epic", "des");
+        for (int i = 0; i < 6; i++) {
+            fourShards.createTask("task " + i, "des", Status.NEW);
+            fourShards.createSubtask(epic, "subtask " + i, "des", Status.NEW);
+        }
+        byte[] manifest = Files.readAllBytes(manager.getFile().toPath());
+        Map<File, byte[]> oldShards = new HashMap<>();
+        for (TaskType type : TaskType.values()) {
+            for (int shard = 0; shard < 4; shard++) {
+                File file = currentShard(type, shard);
+                if (file.exists()) {
+                    oldShards.put(file, Files.readAllBytes(file.toPath()));
+                }
+            }
+        }
+
+        FileBackedTaskManager twoShards = FileBackedTaskManager.loadFromFile(manager.getFile(),
+                StorageOptions.defaults().withShards(2));
+        twoShards.createTask("after", "des", Status.NEW);
+        assertEquals(2, ShardedSnapshot.readManifest(manager.getFile()).shards());
+        Files.write(manager.getFile().toPath(), manifest);
+        for (Map.Entry<File, byte[]> shard : oldShards.entrySet()) {
+            Files.write(shard.getKey().toPath(), shard.getValue());
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+        assertEquals(fourShards.getAllTasks(), loaded.getAllTasks());
+        assertEquals(fourShards.getAllSubtasks(), loaded.getAllSubtasks());
+        assertEquals(fourShards.getEpic(epic.getId()).getSubtasksId(), loaded.getEpic(epic.getId()).getSubtasksId());
+    }
+
+    // Результат сжатия при записи шардов должен складываться из всех записанных шардов, а не только последнего.
+    @Test
+    void compressionStatsAreSummedAcrossShards() throws IOException {
+        FileBackedTaskManager twoShards = FileBackedTaskManager.loadFromFile(manager.getFile(),
+                StorageOptions.defaults().withShards(2));
+        Epic epic = twoShards.createEpic("epic", "des");
+        for (int i = 0; i < 6; i++) {
+            twoShards.createTask("task " + i, "des", Status.NEW);
+            twoShards.createSubtask(epic, "subtask " + i, "des", Status.NEW);
+        }
+
+        FileBackedTaskManager compressed = FileBackedTaskManager.loadFromFile(manager.getFile(),
+                StorageOptions.defaults().withShards(3).withCompression(true));
+        compressed.createTask("after", "des", Status.NEW);
+
+        long shardBytes = 0;
+        for (TaskType type : TaskType.values()) {
+            for (int shard = 0; shard < 3; shard++) {
+                shardBytes += currentShard(type, shard).length();
+            }
+        }
+        assertEquals(shardBytes, compressed.getSaveCompressionStats().compressedBytes());
+    }
+
+    // Шарды поддерживаются только для форматов, которые переписывают файл целиком.
+    @Test
+    void shardsRequireCsvOrBinaryFormat() {
+        assertThrows(IllegalArgumentException.class, () -> StorageOptions.defaults().withShards(-1));
+        assertThrows(IllegalArgumentException.class,
+                () -> StorageOptions.defaults().withFormat(SnapshotFormat.PAGED).withShards(2));
+    }
+
+    // Загруженные через importFrom задачи должны сохраняться в файл.
+    @Test
+    void importedTasksArePersisted() {
+        InMemoryTaskManager source = new InMemoryTaskManager();
+        Epic epic = source.createEpic("epic", "des");
+        source.createSubtask(epic, "subtask", "des", Status.DONE);
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        source.exportTo(exported, SnapshotFormat.BINARY);
+
+        manager.importFrom(Channels.newChannel(new ByteArrayInputStream(exported.toByteArray())));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+        assertEquals(Status.DONE, loaded.getEpic(epic.getId()).getStatus());
+        assertEquals(1, loaded.getAllSubtasks().size());
+    }
+
+    // Неудачная загрузка не должна попадать в файл.
+    @Test
+    void failedImportIsNotPersisted() {
+        Task task = manager.createTask("task", "des", Status.NEW);
+        String csv = "id,type,name,status,description,epic,startTime,duration,endTime\n"
+                + "100,TASK,imported,NEW,des,None,None,0,None\n"
+                + task.getId() + ",TASK,duplicate,NEW,des,None,None,0,None\n";
+
+        assertThrows(ManagerReadException.class, () -> manager.importFrom(
+                Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))));
+
+        assertEquals(List.of(task), FileBackedTaskManager.loadFromFile(manager.getFile()).getAllTasks());
+    }
+
+    // Оборванный при сбое последний кадр журнала должен отбрасываться, а целые записи - восстанавливаться.
+    @Test
+    void tornJournalTailIsTruncatedOnLoad() throws IOException {
+        FileBackedTaskManager journaled = new FileBackedTaskManager(manager.getFile(), PersistenceMode.JOURNAL);
+        Task task = journaled.createTask("Task", "Description", Status.NEW);
+        journaled.updateStatus(task, Status.DONE);
+        journaled.updateName(task, "Renamed");
+        File segment = journaled.getJournalSegments().getFirst();
+        long lastFrameEnd = segment.length();
+        Files.write(segment.toPath(), new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 'P', 'U'},
+                StandardOpenOption.APPEND);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile(), PersistenceMode.JOURNAL);
+
+        assertEquals(new RecoveryStats(3, 10), loaded.getRecoveryStats());
+        assertEquals(lastFrameEnd, segment.length(), "Сегмент должен обрезаться по последнему целому кадру");
+        assertEquals("Renamed", loaded.getTask(task.getId()).getName());
+        assertEquals(Status.DONE, loaded.getTask(task.getId()).getStatus());
+    }
+
+    // Кадр с неверной контрольной суммой должен отбрасываться вместе со всем, что записано после него.
+    @Test
+    void journalFrameWithBadChecksumIsDiscarded() throws IOException {
+        FileBackedTaskManager journaled = new FileBackedTaskManager(manager.getFile(), PersistenceMode.JOURNAL);
+        Task task = journaled.createTask("Task", "Description", Status.NEW);
+        File segment = journaled.getJournalSegments().getFirst();
+        long firstFrameEnd = segment.length();
+        journaled.updateName(task, "Renamed");
+        journaled.updateStatus(task, Status.DONE);
+
+        byte[] bytes = Files.readAllBytes(segment.toPath());
+        bytes[(int) firstFrameEnd + 10] ^= 1;
+        Files.write(segment.toPath(), bytes);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile(), PersistenceMode.JOURNAL);
+
+        assertEquals(1, loaded.getRecoveryStats().recoveredRecords());
+        assertTrue(loaded.getRecoveryStats().isTruncated());
+        assertEquals("Task", loaded.getTask(task.getId()).getName());
+        assertEquals(firstFrameEnd, segment.length());
+    }
+
+    // Повреждённый кадр в закрытом сегменте - не оборванный хвост: загрузка должна завершиться ошибкой,
+    // а не проигрывать следующие сегменты без пропавших записей.
+    @Test
+    void corruptedSealedJournalSegmentFailsLoad() throws IOException {
+        FileBackedTaskManager journaled = new FileBackedTaskManager(manager.getFile(), PersistenceMode.JOURNAL);
+        Task task = journaled.createTask("Task", "Description", Status.NEW);
+        journaled.updateName(task, "Renamed");
+        File sealed = journaled.getJournalSegments().getFirst();
+        FileBackedTaskManager reopened = FileBackedTaskManager.loadFromFile(manager.getFile(), PersistenceMode.JOURNAL);
+        reopened.updateStatus(reopened.getTask(task.getId()), Status.DONE);
+        assertEquals(2, reopened.getJournalSegments().size());
+
+        byte[] bytes = Files.readAllBytes(sealed.toPath());
+        bytes[bytes.length - 2] ^= 1;
+        Files.write(sealed.toPath(), bytes);
+
+        assertThrows(ManagerReadException.class,
+                () -> FileBackedTaskManager.loadFromFile(manager.getFile(), PersistenceMode.JOURNAL));
+        assertEquals(bytes.length, sealed.length(), "Закрытый сегмент не должен обрезаться");
+    }
+
+    // История просмотров должна восстанавливаться после загрузки в порядке последних просмотров.
+    @Test
+    void historyIsRestoredOnLoad() {
+        Task task = manager.createTask("task", "des", Status.NEW);
+        Epic epic = manager.createEpic("epic", "des");
+        Subtask subtask = manager.createSubtask(epic, "subtask", "des", Status.NEW);
+        Task deleted = manager.createTask("deleted", "des", Status.NEW);
+        manager.getTask(task.getId());
+        manager.getSubtask(subtask.getId());
+        manager.getTask(deleted.getId());
+        manager.getEpic(epic.getId());
+        manager.getTask(task.getId());
+        manager.deleteTask(deleted.getId());
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+
+        assertEquals(List.of(subtask, epic, task), loaded.getHistory());
+        loaded.getSubtask(subtask.getId());
+        assertEquals(List.of(epic, task, subtask),
+                FileBackedTaskManager.loadFromFile(manager.getFile()).getHistory());
+    }
+
+    // Загруженный менеджер не должен держать журнал просмотров открытым, пока в нём ничего не просмотрено.
+    @Test
+    void historyLogIsOpenedOnFirstView() {
+        Task task = manager.createTask("task", "des", Status.NEW);
+        manager.getTask(task.getId());
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+        assertFalse(loaded.isHistoryLogOpen(), "Журнал не должен открываться при загрузке");
+        assertEquals(List.of(task), loaded.getHistory());
+        loaded.getTask(task.getId());
+        assertTrue(loaded.isHistoryLogOpen());
+        loaded.close();
+        assertFalse(loaded.isHistoryLogOpen());
+        assertEquals(List.of(task), FileBackedTaskManager.loadFromFile(manager.getFile()).getHistory());
+    }
+
+    // Журнал просмотров должен сворачиваться до текущей истории, а не расти с каждым просмотром.
+    @Test
+    void historyLogIsCompactedWhenItOutgrowsHistory() {
+        Task first = manager.createTask("first", "des", Status.NEW);
+        Task second = manager.createTask("second", "des", Status.NEW);
+        for (int i = 0; i < 3000; i++) {
+            manager.getTask(i % 2 == 0 ? first.getId() : second.getId());
+        }
+
+        assertTrue(manager.getHistoryFile().length() < 5000, "Журнал просмотров должен сворачиваться");
+        assertEquals(List.of(first, second), FileBackedTaskManager.loadFromFile(manager.getFile()).getHistory());
+    }
+
+    // Атомарное сохранение не должно оставлять временный файл рядом со снимком.
+    @Test
+    void atomicSaveLeavesNoTempFile() {
+        manager.createTask("task", "des", Status.NEW);
+
+        assertFalse(new File(manager.getFile().getPath() + ".tmp").exists());
+        assertEquals(1, FileBackedTaskManager.loadFromFile(manager.getFile()).getAllTasks().size());
+    }
+
+    // Неудачное сохранение не должно портить предыдущий снимок.
+    @Test
+    void failedSaveKeepsPreviousSnapshot() throws IOException {
+        Task task = manager.createTask("task", "des", Status.NEW);
+        File tmp = new File(manager.getFile().getPath() + ".tmp");
+        Files.createDirectory(tmp.toPath());
+        try {
+            assertThrows(ManagerSaveException.class, () -> manager.createTask("task 2", "des", Status.NEW));
+            FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile());
+            assertEquals(List.of(task), loaded.getAllTasks());
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
+    // Журнал с fsync после каждой записи должен восстанавливаться так же, как без него.
+    @Test
+    void journalWithFsyncAlwaysRestoresChanges() {
+        StorageOptions options = StorageOptions.defaults().withMode(PersistenceMode.JOURNAL)
+                .withFsyncPolicy(FsyncPolicy.always());
+        FileBackedTaskManager journaled = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        Task task = journaled.createTask("task", "des", Status.NEW);
+        journaled.updateStatus(task, Status.DONE);
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+
+        assertEquals(FsyncPolicy.always(), loaded.getFsyncPolicy());
+        assertEquals(Status.DONE, loaded.getTask(task.getId()).getStatus());
+    }
+
+    // Слоты, назначенные scheduleAll, должны сохраняться в журнал одним пакетом и восстанавливаться.
+    @Test
+    void scheduleAllPersistsAcceptedSlots() {
+        StorageOptions options = StorageOptions.defaults().withMode(PersistenceMode.JOURNAL);
+        FileBackedTaskManager journaled = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        LocalDateTime start = LocalDateTime.of(2025, 9, 30, 9, 0);
+        Task first = journaled.createTask("first", "des", Status.NEW);
+        Task second = journaled.createTask("second", "des", Status.NEW);
+
+        Map<Task, ScheduleOutcome> report = journaled.scheduleAll(Map.of(
+                first, new TimeSlot(start, Duration.ofMinutes(30)),
+                second, new TimeSlot(start.plusMinutes(15), Duration.ofMinutes(30))));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(manager.getFile(), options);
+        assertEquals(ScheduleOutcome.ACCEPTED, report.get(first));
+        assertEquals(ScheduleOutcome.BATCH_CONFLICT, report.get(second));
+        assertEquals(start, loaded.getTask(first.getId()).getStartTime());
+        assertNull(loaded.getTask(second.getId()).getStartTime());
+    }
+
+    // Ошибка записи журнала просмотров не должна прерывать чтение задачи.
+    @Test
+    void historyLogFailureDoesNotFailReads() {
+        Task task = manager.createTask("task", "des", Status.NEW);
+        assertTrue(manager.getHistoryFile().mkdir());
+
+        assertEquals(task, manager.getTask(task.getId()));
+        assertEquals(task, manager.getTask(task.getId()));
+        assertEquals(List.of(task), manager.getHistory());
+    }
+
     @Test
     void testReadException() throws IOException {
         File dir = new File("resources/tests/directoryInsteadOfFile");
@@ -3,13 +3,23 @@ package manager;
 import model.Epic;
 import model.Status;
 import model.Subtask;
+import exceptions.ManagerReadException;
 import model.Task;
+import model.TimeSlot;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -469,4 +479,397 @@ class InMemoryTaskManagerTest extends TaskManagerTest<InMemoryTaskManager> {
         assertEquals(task2.getStartTime(), start2);
         assertEquals(task2.getDurationTime(), duration2);
     }
+
+    // При исключении внутри inBatch все изменения пакета должны откатываться.
+    @Test
+    void inBatchShouldRollbackAllChangesOnException() {
+        Task task = manager.createTask("Task", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(task, LocalDateTime.of(2025, 9, 17, 10, 0), Duration.ofHours(1));
+        Epic epic = manager.createEpic("Epic", "Description");
+        Subtask subtask = manager.createSubtask(epic, "Subtask", "Description", Status.NEW);
+        manager.getTask(task.getId());
+
+        assertThrows(IllegalStateException.class, () -> manager.inBatch(m -> {
+            m.updateName(task, "Changed");
+            m.setStartTimeAndDuration(task, LocalDateTime.of(2025, 9, 18, 10, 0), Duration.ofHours(2));
+            m.updateStatus(subtask, Status.DONE);
+            m.createSubtask(epic, "New subtask", "Description", Status.NEW);
+            m.deleteTask(task.getId());
+            throw new IllegalStateException("Ошибка внутри пакета");
+        }));
+
+        assertEquals("Task", task.getName());
+        assertEquals(LocalDateTime.of(2025, 9, 17, 10, 0), task.getStartTime());
+        assertEquals(task, manager.getAllTasks().getFirst(), "Удалённая в пакете задача должна вернуться");
+        assertTrue(manager.getTasksByPriority(true).contains(task));
+        assertTrue(manager.getHistory().contains(task), "История должна восстанавливаться");
+        assertEquals(Status.NEW, subtask.getStatus());
+        assertEquals(Status.NEW, epic.getStatus());
+        assertEquals(List.of(subtask.getId()), epic.getSubtasksId());
+        assertEquals(1, manager.getAllSubtasks().size());
+    }
+
+    // Откат пакета не должен возвращать общий счётчик id: другой менеджер мог уже выдать следующие id.
+    @Test
+    void rollbackShouldNotReuseIdsIssuedByOtherManagers() {
+        InMemoryTaskManager other = new InMemoryTaskManager();
+        List<Integer> otherIds = new ArrayList<>();
+
+        assertThrows(IllegalStateException.class, () -> manager.inBatch(m -> {
+            m.createTask("Rolled back", "Description", Status.NEW);
+            otherIds.add(other.createTask("Other", "Description", Status.NEW).getId());
+            throw new IllegalStateException("Ошибка внутри пакета");
+        }));
+
+        Task created = manager.createTask("Task", "Description", Status.NEW);
+        assertTrue(created.getId() > otherIds.getFirst(), "id не должен совпадать с уже выданным другим менеджером");
+    }
+
+    // При успешном завершении inBatch все изменения пакета должны сохраняться.
+    @Test
+    void inBatchShouldKeepChangesOnSuccess() {
+        Epic epic = manager.createEpic("Epic", "Description");
+
+        manager.inBatch(m -> {
+            for (int i = 0; i < 5; i++) {
+                Subtask subtask = m.createSubtask(epic, "Subtask " + i, "Description", Status.DONE);
+                m.setStartTimeAndDuration(subtask, LocalDateTime.of(2025, 9, 17, 10 + i, 0), Duration.ofMinutes(30));
+            }
+        });
+
+        assertEquals(5, manager.getAllSubtasks().size());
+        assertEquals(Status.DONE, epic.getStatus());
+        assertEquals(LocalDateTime.of(2025, 9, 17, 10, 0), epic.getStartTime());
+    }
+
+    // Выгруженные задачи должны загружаться в пустой менеджер с теми же id, временем и статусами Epic.
+    @Test
+    void exportedTasksShouldImportIntoEmptyManager() {
+        Task task = manager.createTask("Task", "Описание, с запятой", Status.IN_PROGRESS);
+        manager.setStartTimeAndDuration(task, LocalDateTime.of(2025, 9, 18, 10, 0), Duration.ofMinutes(30));
+        Epic epic = manager.createEpic("Epic", "Description");
+        manager.createSubtask(epic, "Subtask 1", "Description", Status.DONE);
+        manager.createSubtask(epic, "Subtask 2", "Description", Status.NEW);
+
+        for (SnapshotFormat format : List.of(SnapshotFormat.CSV, SnapshotFormat.BINARY)) {
+            ByteArrayOutputStream exported = new ByteArrayOutputStream();
+            manager.exportTo(Channels.newChannel(exported), format);
+
+            InMemoryTaskManager imported = new InMemoryTaskManager();
+            int count = imported.importFrom(Channels.newChannel(new ByteArrayInputStream(exported.toByteArray())));
+
+            assertEquals(4, count);
+            assertEquals(task, imported.getTask(task.getId()));
+            assertEquals(task.getStartTime(), imported.getTask(task.getId()).getStartTime());
+            assertEquals(Status.IN_PROGRESS, imported.getEpic(epic.getId()).getStatus());
+            assertEquals(epic.getSubtasksId(), imported.getEpic(epic.getId()).getSubtasksId());
+        }
+    }
+
+    // Загрузка задачи с id, который уже есть в менеджере, должна завершаться ошибкой.
+    @Test
+    void importShouldRejectExistingId() {
+        manager.createTask("Task", "Description", Status.NEW);
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        manager.exportTo(exported, SnapshotFormat.CSV);
+
+        assertThrows(ManagerReadException.class,
+                () -> manager.importFrom(Channels.newChannel(new ByteArrayInputStream(exported.toByteArray()))));
+    }
+
+    // Ошибка посреди загрузки должна откатывать уже загруженные задачи и изменения существующих Epic.
+    @Test
+    void failedImportShouldLeaveManagerUnchanged() {
+        Task task = manager.createTask("Task", "Description", Status.NEW);
+        Epic epic = manager.createEpic("Epic", "Description");
+        Subtask subtask = manager.createSubtask(epic, "Subtask", "Description", Status.DONE);
+        String csv = "id,type,name,status,description,epic,startTime,duration,endTime\n"
+                + "100,TASK,Imported,NEW,Description,None,None,0,None\n"
+                + "101,SUBTASK,Imported,NEW,Description," + epic.getId() + ",None,0,None\n"
+                + task.getId() + ",TASK,Duplicate,NEW,Description,None,None,0,None\n";
+
+        assertThrows(ManagerReadException.class, () -> manager.importFrom(
+                Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))));
+
+        assertEquals(List.of(task), manager.getAllTasks());
+        assertEquals(List.of(subtask), manager.getAllSubtasks());
+        assertEquals(List.of(subtask.getId()), epic.getSubtasksId());
+        assertEquals(Status.DONE, epic.getStatus());
+    }
+
+    // Ошибка при загрузке в пустой менеджер должна оставлять его пустым, включая расписание.
+    @Test
+    void failedImportIntoEmptyManagerShouldLeaveItEmpty() {
+        String csv = "id,type,name,status,description,epic,startTime,duration,endTime\n"
+                + "100,TASK,Imported,NEW,Description,None,20.09.2025 10:00:00,60,20.09.2025 11:00:00\n"
+                + "101,EPIC,Imported,NEW,Description,None,None,0,None\n"
+                + "102,SUBTASK,Imported,DONE,Description,101,None,0,None\n"
+                + "100,TASK,Duplicate,NEW,Description,None,None,0,None\n";
+
+        assertThrows(ManagerReadException.class, () -> manager.importFrom(
+                Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)))));
+
+        assertTrue(manager.getAllTasks().isEmpty());
+        assertTrue(manager.getAllEpics().isEmpty());
+        assertTrue(manager.getAllSubtasks().isEmpty());
+        assertTrue(manager.getPrioritizedPage(PageCursor.first(), 10).items().isEmpty());
+        Task task = manager.createTask("Task", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(task, LocalDateTime.of(2025, 9, 20, 10, 0), Duration.ofMinutes(60));
+        assertEquals(List.of(task), manager.getPrioritizedPage(PageCursor.first(), 10).items());
+    }
+
+    // Перенос задачи на время, пересекающееся только с её прежним слотом, должен выполняться.
+    @Test
+    void rescheduleShouldIgnoreTaskOwnSlot() {
+        Task task = manager.createTask("Task", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(task, LocalDateTime.of(2025, 9, 21, 10, 0), Duration.ofMinutes(60));
+
+        manager.setStartTimeAndDuration(task, LocalDateTime.of(2025, 9, 21, 10, 30), Duration.ofMinutes(60));
+
+        assertEquals(LocalDateTime.of(2025, 9, 21, 10, 30), task.getStartTime());
+        assertEquals(List.of(task), new ArrayList<>(manager.getTasksByPriority(true)));
+    }
+
+    // Пересечение должно находиться с соседними задачами с обеих сторон, в том числе при касании границ.
+    @Test
+    void overlapShouldBeDetectedWithNeighbours() {
+        LocalDateTime day = LocalDateTime.of(2025, 9, 22, 0, 0);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Task task = manager.createTask("Task " + i, "Description", Status.NEW);
+            manager.setStartTimeAndDuration(task, day.plusHours(2 * i), Duration.ofMinutes(60));
+            tasks.add(task);
+        }
+        Task moved = tasks.get(9);
+
+        manager.setStartTimeAndDuration(moved, day.plusHours(4).plusMinutes(30), Duration.ofMinutes(60));
+        assertEquals(day.plusHours(18), moved.getStartTime(), "Пересечение с задачей, начавшейся раньше");
+        manager.setStartTimeAndDuration(moved, day.plusHours(5).plusMinutes(30), Duration.ofMinutes(30));
+        assertEquals(day.plusHours(18), moved.getStartTime(), "Касание начала следующей задачи");
+        manager.setStartTimeAndDuration(moved, day.plusHours(5).plusMinutes(10), Duration.ofMinutes(30));
+        assertEquals(day.plusHours(5).plusMinutes(10), moved.getStartTime());
+    }
+
+    // С сеткой слотов пересечения должны находиться так же, как без неё, в том числе после снятия задачи,
+    // делившей крайний слот с соседней.
+    @Test
+    void slotGridShouldKeepConflictsOfTasksSharingSlot() {
+        LocalDateTime day = LocalDateTime.of(2025, 9, 23, 0, 0);
+        manager.enableSlotGrid(day, Duration.ofMinutes(15), Duration.ofDays(365));
+        Task first = manager.createTask("First", "Description", Status.NEW);
+        Task second = manager.createTask("Second", "Description", Status.NEW);
+        Task probe = manager.createTask("Probe", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(first, day.plusHours(10), Duration.ofMinutes(50));
+        manager.setStartTimeAndDuration(second, day.plusHours(10).plusMinutes(55), Duration.ofMinutes(30));
+        assertEquals(day.plusHours(10).plusMinutes(55), second.getStartTime(), "Задачи делят слот, не пересекаясь");
+
+        manager.deleteTask(first.getId());
+        manager.setStartTimeAndDuration(probe, day.plusHours(10).plusMinutes(20), Duration.ofMinutes(36));
+
+        assertNull(probe.getStartTime(), "Слот, общий с оставшейся задачей, должен остаться занятым");
+        manager.setStartTimeAndDuration(probe, day.plusHours(10), Duration.ofMinutes(30));
+        assertEquals(day.plusHours(10), probe.getStartTime());
+    }
+
+    // Задачи за пределами горизонта сетки должны проверяться по упорядоченному списку задач.
+    @Test
+    void slotGridShouldFallBackOutsideHorizon() {
+        LocalDateTime origin = LocalDateTime.of(2025, 9, 24, 0, 0);
+        Task early = manager.createTask("Early", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(early, origin.minusHours(1), Duration.ofMinutes(90));
+        manager.enableSlotGrid(origin, Duration.ofMinutes(15), Duration.ofDays(1));
+        Task task = manager.createTask("Task", "Description", Status.NEW);
+
+        manager.setStartTimeAndDuration(task, origin.plusMinutes(15), Duration.ofMinutes(30));
+        assertNull(task.getStartTime(), "Пересечение с частью задачи внутри горизонта");
+        manager.setStartTimeAndDuration(task, origin.plusDays(2), Duration.ofMinutes(30));
+        assertEquals(origin.plusDays(2), task.getStartTime());
+        manager.setStartTimeAndDuration(task, origin.minusMinutes(30), Duration.ofMinutes(15));
+        assertEquals(origin.plusDays(2), task.getStartTime(), "Пересечение до начала горизонта");
+    }
+
+    // Свободный слот должен находиться в первом подходящем промежутке после notBefore и не касаться соседей.
+    @Test
+    void findFreeSlotShouldSkipTooShortGaps() {
+        LocalDateTime day = LocalDateTime.of(2025, 9, 25, 0, 0);
+        Task first = manager.createTask("First", "Description", Status.NEW);
+        Task second = manager.createTask("Second", "Description", Status.NEW);
+        Task third = manager.createTask("Third", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(first, day.plusHours(10), Duration.ofMinutes(60));
+        manager.setStartTimeAndDuration(second, day.plusHours(11).plusMinutes(30), Duration.ofMinutes(30));
+        manager.setStartTimeAndDuration(third, day.plusHours(12).plusMinutes(5), Duration.ofMinutes(55));
+
+        TimeSlot slot = manager.findFreeSlot(day.plusHours(10).plusMinutes(30), Duration.ofMinutes(20));
+        assertEquals(day.plusHours(11).plusMinutes(1), slot.start(), "Слот после текущей задачи");
+        slot = manager.findFreeSlot(day.plusHours(10).plusMinutes(30), Duration.ofMinutes(30));
+        assertEquals(day.plusHours(13).plusMinutes(1), slot.start(), "Короткие промежутки пропускаются");
+
+        Task task = manager.createTask("Task", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(task, slot.start(), slot.duration());
+        assertEquals(slot.start(), task.getStartTime(), "Найденный слот должен быть свободен");
+    }
+
+    // Следующие k слотов должны идти по одному на промежуток в порядке времени.
+    @Test
+    void findFreeSlotsShouldReturnOneSlotPerGap() {
+        LocalDateTime day = LocalDateTime.of(2025, 9, 26, 0, 0);
+        Task first = manager.createTask("First", "Description", Status.NEW);
+        Task second = manager.createTask("Second", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(first, day.plusHours(10), Duration.ofMinutes(60));
+        manager.setStartTimeAndDuration(second, day.plusHours(12), Duration.ofMinutes(60));
+
+        List<TimeSlot> slots = manager.findFreeSlots(day.plusHours(9), Duration.ofMinutes(20), 3);
+
+        assertEquals(List.of(day.plusHours(9), day.plusHours(11).plusMinutes(1), day.plusHours(13).plusMinutes(1)),
+                slots.stream().map(TimeSlot::start).toList());
+        assertThrows(IllegalArgumentException.class, () -> manager.findFreeSlots(day, Duration.ofMinutes(20), 0));
+    }
+
+    // Если промежутков между задачами меньше count, недостающие слоты должны идти подряд после последней задачи.
+    @Test
+    void findFreeSlotsShouldFillRemainingSlotsAfterLastTask() {
+        LocalDateTime day = LocalDateTime.of(2025, 9, 26, 0, 0);
+        Task first = manager.createTask("First", "Description", Status.NEW);
+        Task second = manager.createTask("Second", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(first, day.plusHours(10), Duration.ofMinutes(60));
+        manager.setStartTimeAndDuration(second, day.plusHours(12), Duration.ofMinutes(60));
+
+        List<TimeSlot> slots = manager.findFreeSlots(day.plusHours(9), Duration.ofMinutes(20), 5);
+
+        assertEquals(List.of(day.plusHours(9), day.plusHours(11).plusMinutes(1), day.plusHours(13).plusMinutes(1),
+                        day.plusHours(13).plusMinutes(22), day.plusHours(13).plusMinutes(43)),
+                slots.stream().map(TimeSlot::start).toList());
+        for (TimeSlot slot : slots) {
+            Task task = manager.createTask("Slot", "Description", Status.NEW);
+            manager.setStartTimeAndDuration(task, slot.start(), slot.duration());
+            assertEquals(slot.start(), task.getStartTime(), "Слоты не должны пересекаться");
+        }
+    }
+
+    // Выборка по времени должна видеть задачи, начинающиеся в [from, to), и не позволять менять порядок задач.
+    @Test
+    void tasksBetweenShouldBeUnmodifiableViewOfWindow() {
+        LocalDateTime day = LocalDateTime.of(2025, 9, 27, 0, 0);
+        Task morning = manager.createTask("Morning", "Description", Status.NEW);
+        Task evening = manager.createTask("Evening", "Description", Status.NEW);
+        Task tomorrow = manager.createTask("Tomorrow", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(morning, day.plusHours(9), Duration.ofMinutes(30));
+        manager.setStartTimeAndDuration(evening, day.plusHours(19), Duration.ofMinutes(30));
+        manager.setStartTimeAndDuration(tomorrow, day.plusDays(1), Duration.ofMinutes(30));
+
+        Set<Task> today = manager.getTasksBetween(day, day.plusDays(1));
+        assertEquals(List.of(morning, evening), new ArrayList<>(today));
+        manager.setStartTimeAndDuration(tomorrow, day.plusHours(12), Duration.ofMinutes(30));
+        assertEquals(List.of(morning, tomorrow, evening), new ArrayList<>(today), "Представление, а не копия");
+
+        assertThrows(UnsupportedOperationException.class, () -> today.remove(morning));
+        assertThrows(UnsupportedOperationException.class,
+                () -> manager.getTasksByPriority(false).remove(morning));
+        assertEquals(List.of(tomorrow, evening), manager.getTasksStartingAfter(day.plusHours(9), 5));
+        assertEquals(List.of(morning), manager.getTasksStartingAfter(day, 1));
+    }
+
+    // Страницы по курсору должны выдать все задачи ровно один раз, в том числе после удаления последней
+    // выданной задачи между запросами.
+    @Test
+    void pagesShouldContinueFromCursor() {
+        LocalDateTime day = LocalDateTime.of(2025, 9, 28, 0, 0);
+        List<Task> created = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Task task = manager.createTask("Task " + i, "Description", Status.NEW);
+            manager.setStartTimeAndDuration(task, day.plusHours(10 - i), Duration.ofMinutes(30));
+            created.add(task);
+        }
+
+        TaskPage<Task> first = manager.getTasksPage(PageCursor.first(), 2);
+        assertEquals(created.subList(0, 2), first.items());
+        manager.deleteTask(created.get(1).getId());
+        TaskPage<Task> second = manager.getTasksPage(first.next(), 2);
+        assertEquals(created.subList(2, 4), second.items());
+        TaskPage<Task> last = manager.getTasksPage(second.next(), 2);
+        assertEquals(List.of(created.get(4)), last.items());
+        assertFalse(last.hasNext(), "Последняя страница без курсора");
+
+        TaskPage<Task> prioritized = manager.getPrioritizedPage(PageCursor.first(), 3);
+        assertEquals(List.of(created.get(4), created.get(3), created.get(2)), prioritized.items());
+        assertEquals(List.of(created.get(0)), manager.getPrioritizedPage(prioritized.next(), 3).items());
+        assertThrows(IllegalArgumentException.class, () -> manager.getEpicsPage(PageCursor.first(), 0));
+    }
+
+    // Индекс id для страниц должен откатываться вместе с задачами неудачного пакета.
+    @Test
+    void pagesShouldFollowRolledBackBatch() {
+        Epic epic = manager.createEpic("Epic", "Description");
+        Subtask subtask = manager.createSubtask(epic, "Subtask", "Description", Status.NEW);
+
+        assertThrows(IllegalStateException.class, () -> manager.inBatch(m -> {
+            m.deleteAllEpics();
+            m.createEpic("Epic 2", "Description");
+            throw new IllegalStateException("Сбой в пакете");
+        }));
+
+        assertEquals(List.of(epic), manager.getEpicsPage(PageCursor.first(), 10).items());
+        assertEquals(List.of(subtask), manager.getSubtasksPage(PageCursor.first(), 10).items());
+    }
+
+    // Пачка слотов должна проверяться и с расписанием, и внутри себя, а отчёт - объяснять каждый отказ.
+    @Test
+    void scheduleAllShouldReportConflictsPerTask() {
+        LocalDateTime day = LocalDateTime.of(2025, 9, 29, 0, 0);
+        Task board = manager.createTask("Board", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(board, day.plusHours(10), Duration.ofMinutes(60));
+        Epic epic = manager.createEpic("Epic", "Description");
+        Subtask subtask = manager.createSubtask(epic, "Subtask", "Description", Status.NEW);
+        Task late = manager.createTask("Late", "Description", Status.NEW);
+        Task overlapping = manager.createTask("Overlapping", "Description", Status.NEW);
+        Task clashing = manager.createTask("Clashing", "Description", Status.NEW);
+
+        Map<Task, TimeSlot> slots = new LinkedHashMap<>();
+        slots.put(late, new TimeSlot(day.plusHours(14), Duration.ofMinutes(30)));
+        slots.put(board, new TimeSlot(day.plusHours(10).plusMinutes(30), Duration.ofMinutes(60)));
+        slots.put(subtask, new TimeSlot(day.plusHours(12), Duration.ofMinutes(45)));
+        slots.put(overlapping, new TimeSlot(day.plusHours(12).plusMinutes(30), Duration.ofMinutes(30)));
+        slots.put(clashing, new TimeSlot(day.plusHours(9).plusMinutes(30), Duration.ofMinutes(30)));
+        slots.put(epic, new TimeSlot(day, Duration.ofMinutes(30)));
+
+        Map<Task, ScheduleOutcome> report = manager.scheduleAll(slots);
+
+        assertEquals(List.of(late, board, subtask, overlapping, clashing, epic), new ArrayList<>(report.keySet()));
+        assertEquals(List.of(ScheduleOutcome.ACCEPTED, ScheduleOutcome.ACCEPTED, ScheduleOutcome.ACCEPTED,
+                ScheduleOutcome.BATCH_CONFLICT, ScheduleOutcome.BOARD_CONFLICT, ScheduleOutcome.NOT_SCHEDULABLE),
+                new ArrayList<>(report.values()));
+        assertEquals(day.plusHours(10).plusMinutes(30), board.getStartTime(), "Сдвиг на свой же слот");
+        assertEquals(day.plusHours(12), epic.getStartTime(), "Время Epic пересчитывается по Subtask");
+        assertNull(clashing.getStartTime());
+        assertEquals(List.of(board, subtask, late), new ArrayList<>(manager.getTasksByPriority(true)));
+    }
+
+    // Проверка расписания должна находить все пары пересечений, включая время, изменённое в обход менеджера,
+    // и касание границами.
+    @Test
+    void findAllConflictsShouldReportEveryOverlappingPair() {
+        LocalDateTime day = LocalDateTime.of(2025, 10, 1, 0, 0);
+        Task first = manager.createTask("First", "Description", Status.NEW);
+        Task second = manager.createTask("Second", "Description", Status.NEW);
+        Task third = manager.createTask("Third", "Description", Status.NEW);
+        Epic epic = manager.createEpic("Epic", "Description");
+        Subtask subtask = manager.createSubtask(epic, "Subtask", "Description", Status.NEW);
+        manager.setStartTimeAndDuration(first, day.plusHours(10), Duration.ofMinutes(60));
+        manager.setStartTimeAndDuration(second, day.plusHours(12), Duration.ofMinutes(60));
+        manager.setStartTimeAndDuration(third, day.plusHours(14), Duration.ofMinutes(30));
+        manager.setStartTimeAndDuration(subtask, day.plusHours(16), Duration.ofMinutes(30));
+        assertTrue(manager.findAllConflicts().isEmpty());
+
+        second.setStartTime(day.plusHours(10).plusMinutes(15));
+        second.setDurationTime(Duration.ofMinutes(240));
+        subtask.setStartTime(day.plusHours(14).plusMinutes(15));
+
+        Set<List<Integer>> pairs = new HashSet<>();
+        manager.findAllConflicts().forEach(conflict -> {
+            assertFalse(conflict.first().getStartTime().isAfter(conflict.second().getStartTime()));
+            pairs.add(List.of(conflict.first().getId(), conflict.second().getId()));
+        });
+        assertEquals(Set.of(List.of(first.getId(), second.getId()), List.of(second.getId(), third.getId()),
+                List.of(second.getId(), subtask.getId()), List.of(third.getId(), subtask.getId())), pairs);
+    }
 }
@@ -1,6 +1,11 @@
 package manager;
 
 import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 class ManagersTest {
@@ -21,4 +26,35 @@ class ManagersTest {
         assertDoesNotThrow(() -> inMemoryTaskManager.getHistory(),
                 "Метод inMemoryTaskManager должен работать без исключений.");
     }
-}
\ No newline at end of file
+
+    // Политика записи должна передаваться в создаваемый FileBackedTaskManager.
+    @Test
+    public void shouldCreateFileBackedManagerWithFlushPolicy() throws IOException {
+        File file = File.createTempFile("test", ".csv", new File("resources/tests"));
+        file.deleteOnExit();
+
+        FileBackedTaskManager manager = Managers.getFileBacked(file, FlushPolicy.interval(50));
+
+        assertEquals(FlushPolicy.interval(50), manager.getFlushPolicy());
+        manager.close();
+    }
+
+    // Тип хранилища и файл должны браться из настроек.
+    @Test
+    public void shouldCreateManagerWithStoreFromConfig() throws IOException {
+        File file = File.createTempFile("test", ".log", new File("resources/tests"));
+        file.deleteOnExit();
+        Properties config = new Properties();
+        config.setProperty("store", "log");
+        config.setProperty("file", file.getPath());
+
+        InMemoryTaskManager manager = Managers.getDefault(config);
+
+        FileBackedTaskManager fileBacked = assertInstanceOf(FileBackedTaskManager.class, manager);
+        assertEquals(PersistenceMode.JOURNAL, fileBacked.getMode());
+        assertEquals(file, fileBacked.getFile());
+        assertFalse(Managers.getDefault(new Properties()) instanceof FileBackedTaskManager);
+        config.remove("file");
+        assertThrows(IllegalArgumentException.class, () -> Managers.getDefault(config));
+    }
+}
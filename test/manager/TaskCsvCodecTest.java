@@ -0,0 +1,108 @@
+package manager;
+
+import model.Epic;
+import model.Status;
+import model.Subtask;
+import model.Task;
+import model.TaskType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TaskCsvCodecTest {
+
+    // Запись Task со временем должна совпадать с прежним форматом CSV.
+    @Test
+    void shouldFormatTaskInCompatibleLayout() {
+        Task task = new Task(1, "Task", "Description", Status.NEW);
+        task.setStartTime(LocalDateTime.of(2025, 9, 5, 8, 3, 7));
+        task.setDurationTime(Duration.ofMinutes(60));
+
+        assertEquals("1,TASK,Task,NEW,Description,None,05.09.2025 08:03:07,60,05.09.2025 09:03:07",
+                TaskCsvCodec.format(task));
+    }
+
+    // Имя и описание с запятыми, кавычками и переводами строк должны восстанавливаться без изменений.
+    @Test
+    void shouldRoundTripTextWithSpecialCharacters() {
+        Subtask subtask = new Subtask(5, 3, "a,b \"c\"", "line 1\r\nline 2,\n\"end\"", Status.DONE);
+
+        TaskRecord record = TaskCsvCodec.parse(TaskCsvCodec.format(subtask));
+
+        assertEquals(5, record.id());
+        assertEquals(TaskType.SUBTASK, record.type());
+        assertEquals(subtask.getName(), record.name());
+        assertEquals(subtask.getDescription(), record.description());
+        assertEquals(Status.DONE, record.status());
+        assertEquals(3, record.parentId());
+        assertNull(record.startTime());
+        assertEquals(Duration.ZERO, record.duration());
+    }
+
+    // Запись Epic без времени должна разбираться с пустыми полями None.
+    @Test
+    void shouldParseEpicWithoutTime() {
+        TaskRecord record = TaskCsvCodec.parse(TaskCsvCodec.format(new Epic(2, "Epic", "")));
+
+        assertEquals(TaskType.EPIC, record.type());
+        assertEquals("", record.description());
+        assertNull(record.startTime());
+    }
+
+    // Перевод строки внутри кавычек не должен завершать запись при чтении.
+    @Test
+    void recordReaderShouldKeepLineBreaksInsideQuotes() throws IOException {
+        String first = TaskCsvCodec.format(new Task(1, "Task", "multi\nline", Status.NEW));
+        String second = TaskCsvCodec.format(new Task(2, "Task", "plain", Status.NEW));
+
+        try (CsvRecordReader reader = new CsvRecordReader(new StringReader(first + "\r\n" + second))) {
+            assertEquals(first, reader.next());
+            assertEquals(second, reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    // Кавычка не в начале поля в записи старого формата должна читаться как обычный символ.
+    @Test
+    void shouldReadStrayQuotesInUnquotedFieldsLiterally() throws IOException {
+        String legacy = "1,TASK,Купить \"молоко\",NEW,Взять \"2\" пакета,None,None,0,None";
+        String quotedStart = "2,TASK,\"Срочно\" позвонить,NEW,Description,None,None,0,None";
+
+        try (CsvRecordReader reader = new CsvRecordReader(new StringReader(legacy + "\n" + quotedStart))) {
+            TaskRecord first = TaskCsvCodec.parse(reader.next());
+            assertEquals("Купить \"молоко\"", first.name());
+            assertEquals("Взять \"2\" пакета", first.description());
+            assertEquals(Status.NEW, first.status());
+
+            TaskRecord second = TaskCsvCodec.parse(reader.next());
+            assertEquals("\"Срочно\" позвонить", second.name());
+            assertEquals("Description", second.description());
+            assertNull(reader.next());
+        }
+    }
+
+    // Старое поле, начатое незакрытой кавычкой, не должно поглощать следующие записи.
+    @Test
+    void unclosedLeadingQuoteShouldNotSwallowFollowingRecords() throws IOException {
+        String legacy = "1,TASK,\"Монитор 27,NEW,Description,None,None,0,None";
+        String plain = "2,TASK,Task,NEW,Description,None,None,0,None";
+        String quoted = TaskCsvCodec.format(new Task(3, "Task", "with, comma", Status.NEW));
+
+        try (CsvRecordReader reader = new CsvRecordReader(new StringReader(legacy + "\n" + plain + "\n" + quoted))) {
+            assertEquals("\"Монитор 27", TaskCsvCodec.parse(reader.next()).name());
+            assertEquals(plain, reader.next());
+            assertEquals(quoted, reader.next());
+            assertNull(reader.next());
+        }
+        try (CsvRecordReader reader = new CsvRecordReader(new StringReader(legacy + "\r\n" + plain + "\n"))) {
+            assertEquals(legacy, reader.next());
+            assertEquals(plain, reader.next());
+            assertNull(reader.next());
+        }
+    }
+}